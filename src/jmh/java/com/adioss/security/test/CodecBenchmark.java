@@ -0,0 +1,196 @@
+package com.adioss.security.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Throughput of the record codec on the probe path: building the
+ * ClientHello, framing records, reading them back, decoding the server
+ * answers, and hashing certificates. Run with -prof gc (the default of
+ * the jmh profile) to get the allocation rate of each operation.
+ *
+ * The fixtures are real server answers to a ClientHello offering all
+ * known suites, captured from JSSE servers (a TLS 1.2 one and a
+ * TLS 1.0 one; ServerHello with extensions, Certificate,
+ * ServerKeyExchange, ServerHelloDone). No SSLv2 server was at hand:
+ * the SSLv2 fixture is a SERVER-HELLO built by the tests' FakeTlsServer
+ * around the certificate of the TLS 1.2 fixture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+        }
+    };
+
+    @Param({"jsse-tls12.bin", "jsse-tls10.bin"})
+    public String fixture;
+
+    private byte[] answer;
+    private int handshakeLen;
+    private byte[] answerV2;
+    private byte[] certificate;
+    private byte[] helloBuffer;
+    private byte[] payload;
+    private byte[] readBuffer;
+    private ByteArrayInputStream answerStream;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        answer = resource(fixture);
+        handshakeLen = handshakeLength(answer);
+        answerV2 = resource("sslv2-synthetic.bin");
+        certificate = certificate(answer);
+        helloBuffer = new byte[ClientHelloTemplate.length(CipherSuiteUnion.ALL_SUITES.size())];
+        payload = new byte[4096];
+        Constants.RNG.nextBytes(payload);
+        readBuffer = new byte[4096];
+        answerStream = new ByteArrayInputStream(answer);
+    }
+
+    @Benchmark
+    public byte[] makeClientHello() {
+        return TestSSLServer.makeClientHello(0x0303, CipherSuiteUnion.ALL_SUITES);
+    }
+
+    @Benchmark
+    public int clientHelloTemplate() {
+        return ClientHelloTemplate.write(0x0303, CipherSuiteUnion.ALL_SUITES, helloBuffer);
+    }
+
+    @Benchmark
+    public void outputRecord() throws IOException {
+        OutputRecord rec = new OutputRecord(DISCARD);
+        rec.setType(Constants.HANDSHAKE);
+        rec.setVersion(0x0303);
+        rec.write(payload, 0, payload.length);
+        rec.flush();
+        rec.close();
+    }
+
+    /**
+     * All the handshake bytes of the fixture through InputRecord, which
+     * refills once per record; reading stops at the last one rather
+     * than on the end of the stream.
+     */
+    @Benchmark
+    public void inputRecord(Blackhole bh) throws IOException {
+        answerStream.reset();
+        InputRecord rec = new InputRecord(answerStream);
+        rec.setExpectedType(Constants.HANDSHAKE);
+        try {
+            for (int left = handshakeLen; left > 0; ) {
+                int n = rec.read(readBuffer, 0, Math.min(left, readBuffer.length));
+                bh.consume(n);
+                left -= n;
+            }
+        } finally {
+            rec.close();
+        }
+    }
+
+    @Benchmark
+    public ServerHello serverHello() throws IOException {
+        answerStream.reset();
+        return new ServerHello(answerStream, false);
+    }
+
+    @Benchmark
+    public ServerHello serverHelloOnly() throws IOException {
+        answerStream.reset();
+        return new ServerHello(answerStream, true);
+    }
+
+    @Benchmark
+    public ServerHelloSSLv2 serverHelloSSLv2() throws IOException {
+        return new ServerHelloSSLv2(new ByteArrayInputStream(answerV2));
+    }
+
+    @Benchmark
+    public String doSHA1() {
+        return Utils.doSHA1(certificate);
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = CodecBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("missing fixture: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * The total payload length of the handshake records of an answer.
+     */
+    private static int handshakeLength(byte[] answer) throws IOException {
+        int total = 0;
+        for (int ptr = 0; ptr + 5 <= answer.length; ) {
+            int len = Utils.dec16be(answer, ptr + 3);
+            if (ptr + 5 + len > answer.length) {
+                throw new IOException("truncated fixture");
+            }
+            if ((answer[ptr] & 0xFF) == Constants.HANDSHAKE) {
+                total += len;
+            }
+            ptr += 5 + len;
+        }
+        return total;
+    }
+
+    /**
+     * The first certificate of the Certificate message of an answer.
+     */
+    private static byte[] certificate(byte[] answer) throws IOException {
+        InputRecord rec = new InputRecord(new ByteArrayInputStream(answer));
+        rec.setExpectedType(Constants.HANDSHAKE);
+        try {
+            byte[] header = new byte[4];
+            for (; ; ) {
+                Utils.readFully(rec, header);
+                byte[] message = new byte[Utils.dec24be(header, 1)];
+                Utils.readFully(rec, message);
+                if (header[0] == 11) {
+                    byte[] cert = new byte[Utils.dec24be(message, 3)];
+                    System.arraycopy(message, 6, cert, 0, cert.length);
+                    return cert;
+                }
+            }
+        } finally {
+            rec.close();
+        }
+    }
+}
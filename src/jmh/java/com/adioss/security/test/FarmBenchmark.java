@@ -0,0 +1,257 @@
+package com.adioss.security.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import static com.adioss.security.test.ScanOptions.parseInt;
+
+/*
+ * End-to-end throughput of the scanner, without network: a farm of
+ * JSSE servers is started on the loopback interface (see
+ * JsseServerFarm), and all of them are scanned with the flow of
+ * TestSSLServer -batch, once to warm up and then "rounds" times. For
+ * each mode the best round gives hosts/s and probes/s (connections
+ * accepted by the farm), and all rounds give the p50/p99 scan time of
+ * one host and the peak heap usage.
+ *
+ * The servers run in the same JVM as the scanner and share its CPUs:
+ * the numbers are for tracking changes, not for capacity planning.
+ */
+public class FarmBenchmark {
+    private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+    });
+    private static final char[] PASSWORD = "farm-benchmark".toCharArray();
+
+    private int servers = 16;
+    private int threads = 64;
+    private int chunks = 4;
+    private int hosts = 32;
+    private int rounds = 3;
+    private long seed = 1;
+    private boolean nio;
+    private boolean helloOnly;
+    private boolean legacy;
+    private File keyStore;
+
+    static void usage() {
+        System.err.println("usage: FarmBenchmark [ options ]");
+        System.err.println("  -servers n   servers in the farm (default: 16)");
+        System.err.println("  -threads n   concurrent probes (default: 64)");
+        System.err.println("  -chunks n    parallel suite-discovery chunks per version (default: 4)");
+        System.err.println("  -hosts n     concurrent hosts (default: 32)");
+        System.err.println("  -rounds n    measured rounds (default: 3)");
+        System.err.println("  -seed n      seed of the server configurations (default: 1)");
+        System.err.println("  -nio         also measure the non-blocking engine");
+        System.err.println("  -helloonly   stop reading at the ServerHello");
+        System.err.println("  -legacy      let the servers enable TLS 1.0 and 1.1");
+        System.err.println("  -keystore f  PKCS12 (or .jks) key store of the servers, with");
+        System.err.println("               password \"farm-benchmark\" (default: a new RSA key)");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        FarmBenchmark benchmark = new FarmBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-nio")) {
+                benchmark.nio = true;
+                continue;
+            } else if (arg.equals("-helloonly")) {
+                benchmark.helloOnly = true;
+                continue;
+            } else if (arg.equals("-legacy")) {
+                benchmark.legacy = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            String value = args[++i];
+            if (arg.equals("-servers")) {
+                benchmark.servers = parseInt(value, 1, 10000);
+            } else if (arg.equals("-threads")) {
+                benchmark.threads = parseInt(value, 1, 100000);
+            } else if (arg.equals("-chunks")) {
+                benchmark.chunks = parseInt(value, 1, 64);
+            } else if (arg.equals("-hosts")) {
+                benchmark.hosts = parseInt(value, 1, 10000);
+            } else if (arg.equals("-rounds")) {
+                benchmark.rounds = parseInt(value, 1, 1000);
+            } else if (arg.equals("-seed")) {
+                benchmark.seed = Long.parseLong(value);
+            } else if (arg.equals("-keystore")) {
+                benchmark.keyStore = new File(value);
+            } else {
+                usage();
+            }
+        }
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        if (legacy) {
+            // Must be set before the first use of JSSE.
+            Security.setProperty("jdk.tls.disabledAlgorithms", "");
+        }
+        File ks = keyStore != null ? keyStore : JsseServerFarm.generateKeyStore(PASSWORD);
+        try (JsseServerFarm farm = new JsseServerFarm(servers, seed, ks, PASSWORD)) {
+            List<InetSocketAddress> targets = farm.addresses();
+            System.out.printf("%d servers, %d concurrent probes, %d chunks, %d hosts, %d rounds%n",
+                    targets.size(), threads, chunks, hosts, rounds);
+            measure("blocking", farm, targets, this::blockingScanner);
+            if (nio) {
+                measure("nio", farm, targets, this::nioScanner);
+            }
+        }
+    }
+
+    /*
+     * A scanner and what it runs on; closing it throws nothing, so that
+     * it fits try-with-resources without an interrupt to handle.
+     */
+    private interface Scanner extends AutoCloseable {
+        Function<InetSocketAddress, ScanReport> scanner();
+
+        @Override
+        void close();
+    }
+
+    private Scanner blockingScanner() {
+        ExecutorService probes = ScanExecutors.platform(threads);
+        Prober prober = new Prober(Prober.DEFAULT_CONNECT_TIMEOUT, Prober.DEFAULT_READ_TIMEOUT, helloOnly);
+        ScanEngine engine = new ScanEngine(probes, prober, chunks, 0);
+        return new Scanner() {
+            @Override
+            public Function<InetSocketAddress, ScanReport> scanner() {
+                return engine::scan;
+            }
+
+            @Override
+            public void close() {
+                probes.shutdownNow();
+            }
+        };
+    }
+
+    private Scanner nioScanner() throws Exception {
+        NioProbeEngine engine = new NioProbeEngine(threads, Prober.DEFAULT_CONNECT_TIMEOUT,
+                Prober.DEFAULT_READ_TIMEOUT, helloOnly);
+        return new Scanner() {
+            @Override
+            public Function<InetSocketAddress, ScanReport> scanner() {
+                return isa -> engine.scan(isa, chunks, 0).join();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    engine.close();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        };
+    }
+
+    private interface ScannerFactory {
+        Scanner create() throws Exception;
+    }
+
+    private void measure(String mode, JsseServerFarm farm, List<InetSocketAddress> targets,
+                         ScannerFactory factory) throws Exception {
+        // The first round only warms up the JIT and the caches.
+        scanAll(factory, targets, new ArrayList<>());
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        long best = Long.MAX_VALUE;
+        long bestProbes = 0;
+        resetPeakHeap();
+        for (int r = 0; r < rounds; r++) {
+            long accepted = farm.connections.get();
+            long start = System.nanoTime();
+            int found = scanAll(factory, targets, latencies);
+            long elapsed = System.nanoTime() - start;
+            if (found != targets.size()) {
+                System.out.printf("%s: only %d of %d servers found%n", mode, found, targets.size());
+            }
+            if (elapsed < best) {
+                best = elapsed;
+                bestProbes = farm.connections.get() - accepted;
+            }
+        }
+        long[] sorted = new long[latencies.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        System.out.printf("%-8s %8.1f hosts/s %9.1f probes/s  p50 %7.1f ms  p99 %7.1f ms  peak heap %6.1f MB%n",
+                mode, targets.size() * 1e9 / best, bestProbes * 1e9 / best,
+                percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6, peakHeap() / 1048576.0);
+    }
+
+    private int scanAll(ScannerFactory factory, List<InetSocketAddress> targets, List<Long> latencies)
+            throws Exception {
+        try (Scanner scanner = factory.create()) {
+            Function<InetSocketAddress, ScanReport> scan = scanner.scanner();
+            Function<InetSocketAddress, ScanReport> timed = isa -> {
+                long start = System.nanoTime();
+                try {
+                    return scan.apply(isa);
+                } finally {
+                    latencies.add(System.nanoTime() - start);
+                }
+            };
+            return new BatchScanner(timed, hosts, NULL_OUT, null).scanAll(targets);
+        }
+    }
+
+    /**
+     * The nearest-rank percentile of sorted values.
+     */
+    static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * The sum of the peak usage of the heap pools, an upper bound of the
+     * peak heap usage.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,228 @@
+package com.adioss.security.test;
+
+import com.adioss.security.impl.LocalCipherExplorer;
+import com.adioss.security.model.CipherDescription;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * In-process JSSE servers on the loopback interface, each with its own
+ * configuration: a range of protocol versions, and a random subset of
+ * the RSA suites which LocalCipherExplorer lists, in a random order
+ * which the server enforces. The configurations derive from a seed, so
+ * that a benchmark scans the same farm from one run to the next.
+ *
+ * The protocol versions range within TLS 1.0 to 1.2, restricted to
+ * those enabled by default (jdk.tls.disabledAlgorithms).
+ *
+ * Connections are served by a shared pool of daemon threads; a
+ * handshake ends as soon as the scanner closes the connection.
+ */
+final class JsseServerFarm implements Closeable {
+    private static final String[] VERSIONS = {"TLSv1", "TLSv1.1", "TLSv1.2"};
+    private static final int MAX_ACCEPT_FAILURES = 10;
+
+    private final List<SSLServerSocket> servers = new ArrayList<>();
+    private final ExecutorService handlers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "jsse-farm");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+    final AtomicLong connections = new AtomicLong();
+
+    /**
+     * Start n servers with the key of the keystore (PKCS12 or JKS,
+     * whose key has the store password).
+     */
+    JsseServerFarm(int n, long seed, File keyStore, char[] password) throws IOException, GeneralSecurityException {
+        SSLContext context = context(keyStore, password);
+        List<String> candidates = rsaSuites(context);
+        List<String> versions = new ArrayList<>(Arrays.asList(VERSIONS));
+        versions.retainAll(Arrays.asList(context.getDefaultSSLParameters().getProtocols()));
+        Random random = new Random(seed);
+        try {
+            for (int i = 0; i < n; i++) {
+                SSLServerSocket server = (SSLServerSocket) context.getServerSocketFactory()
+                        .createServerSocket(0, 256, InetAddress.getLoopbackAddress());
+                configure(server, candidates, versions, random);
+                servers.add(server);
+                Thread acceptor = new Thread(() -> accept(server), "jsse-farm-accept-" + server.getLocalPort());
+                acceptor.setDaemon(true);
+                acceptor.start();
+            }
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    List<InetSocketAddress> addresses() {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (SSLServerSocket server : servers) {
+            addresses.add(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+        }
+        return addresses;
+    }
+
+    /**
+     * A new RSA key pair and self-signed certificate, made with the
+     * keytool of the running JDK, in a temporary PKCS12 file.
+     */
+    static File generateKeyStore(char[] password) throws IOException {
+        File dir = Files.createTempDirectory("jsse-farm").toFile();
+        dir.deleteOnExit();
+        File keyStore = new File(dir, "farm.p12");
+        keyStore.deleteOnExit();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "farm", "-keyalg", "RSA",
+                "-keysize", "2048", "-dname", "CN=jsse-farm", "-validity", "2", "-storetype", "PKCS12",
+                "-keystore", keyStore.getPath(), "-storepass", new String(password),
+                "-keypass", new String(password)).redirectErrorStream(true).start();
+        try {
+            drain(process.getInputStream());
+            if (process.waitFor() != 0 || !keyStore.isFile()) {
+                throw new IOException("keytool failed (exit code " + process.exitValue() + ")");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        }
+        return keyStore;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (SSLServerSocket server : servers) {
+            try {
+                server.close();
+            } catch (IOException ioe) {
+                // ignored
+            }
+        }
+        handlers.shutdownNow();
+    }
+
+    private static SSLContext context(File keyStore, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance(keyStore.getName().endsWith(".jks") ? "JKS" : "PKCS12");
+        try (InputStream in = new FileInputStream(keyStore)) {
+            ks.load(in, password);
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, password);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+
+    /**
+     * The suites an RSA key can serve: RSA key exchange, or ephemeral
+     * (EC)DH signed with RSA.
+     */
+    private static List<String> rsaSuites(SSLContext context) {
+        List<String> supported = Arrays.asList(context.getSupportedSSLParameters().getCipherSuites());
+        List<String> suites = new ArrayList<>();
+        for (CipherDescription description : new LocalCipherExplorer().listCipherDescriptions()) {
+            String name = description.getName();
+            if (supported.contains(name) && (name.startsWith("TLS_RSA_") || name.startsWith("SSL_RSA_")
+                    || name.contains("DHE_RSA_"))) {
+                suites.add(name);
+            }
+        }
+        return suites;
+    }
+
+    private static void configure(SSLServerSocket server, List<String> candidates, List<String> versions,
+                                  Random random) {
+        List<String> suites = new ArrayList<>(candidates);
+        Collections.shuffle(suites, random);
+        int count = 1 + random.nextInt(suites.size());
+        int low = random.nextInt(versions.size());
+        int high = low + random.nextInt(versions.size() - low);
+        SSLParameters parameters = server.getSSLParameters();
+        parameters.setCipherSuites(suites.subList(0, count).toArray(new String[0]));
+        parameters.setProtocols(versions.subList(low, high + 1).toArray(new String[0]));
+        parameters.setUseCipherSuitesOrder(true);
+        server.setSSLParameters(parameters);
+    }
+
+    /**
+     * Accept connections until the farm is closed. A failing accept()
+     * (e.g. out of file descriptors) is retried after an increasing
+     * pause; the server is abandoned after MAX_ACCEPT_FAILURES in a
+     * row.
+     */
+    private void accept(SSLServerSocket server) {
+        int failures = 0;
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException ioe) {
+                if (closed || server.isClosed()) {
+                    return;
+                }
+                System.err.println("accept failed on " + server.getLocalSocketAddress() + ": " + ioe);
+                if (++failures == MAX_ACCEPT_FAILURES) {
+                    System.err.println("giving up on " + server.getLocalSocketAddress());
+                    return;
+                }
+                try {
+                    Thread.sleep(10L << failures);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            failures = 0;
+            connections.incrementAndGet();
+            handlers.execute(() -> handshake((SSLSocket) socket));
+        }
+    }
+
+    private static void handshake(SSLSocket socket) {
+        try {
+            socket.setSoTimeout(10000);
+            socket.startHandshake();
+        } catch (IOException ioe) {
+            // the scanner never completes the handshake
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // ignored
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[1024];
+        while (in.read(buf) >= 0) {
+            // keytool output is not needed
+        }
+    }
+}
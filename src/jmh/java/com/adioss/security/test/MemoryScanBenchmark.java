@@ -0,0 +1,72 @@
+package com.adioss.security.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Throughput of whole host scans over MemoryTransport, against the
+ * tests' FakeTlsServer (TLS 1.0 to 1.2, with a certificate): the scan
+ * algorithms, the hello encoding and the answer decoding, without any
+ * network or kernel time. One operation is the scan of one host by
+ * ScanEngine; FarmBenchmark gives the cost of real connections.
+ *
+ * The NIO engine writes to SocketChannels directly, not through
+ * Transport, so it is only measured by FarmBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryScanBenchmark {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+    private static final List<Integer> TLS12_SUITES = Arrays.asList(0xC02F, 0xC030, 0x009C, 0x009D, 0x002F,
+            0x0035, 0x000A);
+    private static final List<Integer> TLS10_SUITES = Arrays.asList(0x002F, 0x0035, 0x000A, 0x0005);
+
+    @Param({"1", "4"})
+    public int chunks;
+
+    @Param({"false", "true"})
+    public boolean helloOnly;
+
+    private ExecutorService executor;
+    private ScanEngine engine;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        MemoryTransport transport = new MemoryTransport().serve(TARGET, new FakeTlsServer(0x0301, 0x0303,
+                TLS12_SUITES, FakeTlsServer.certificate()).suites(0x0301, TLS10_SUITES).suites(0x0302, TLS10_SUITES));
+        executor = ScanExecutors.platform(16);
+        engine = new ScanEngine(executor, new Prober(0, 0, helloOnly).withTransport(transport), chunks, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public ScanReport scan() {
+        return engine.scan(TARGET);
+    }
+}
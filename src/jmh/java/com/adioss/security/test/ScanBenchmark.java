@@ -0,0 +1,95 @@
+package com.adioss.security.test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntFunction;
+
+import static com.adioss.security.test.ScanOptions.parseInt;
+
+/*
+ * Compares the scan wall-clock time of the same target list with probes
+ * running on a pool of platform threads, and on virtual threads with
+ * the same concurrency cap. The target file has the format of the
+ * TestSSLServer -batch mode; up to "hosts" targets are scanned at a
+ * time, on the fixed pool of BatchScanner, whatever the thread model of
+ * the probes.
+ */
+public class ScanBenchmark {
+    private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+    });
+
+    static void usage() {
+        System.err.println("usage: ScanBenchmark [ -threads n ] [ -chunks n ] [ -hosts n ] [ -rounds n ] targetfile");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = 64;
+        int chunks = 4;
+        int hosts = 32;
+        int rounds = 3;
+        int i = 0;
+        while (i < args.length - 1 && args[i].startsWith("-")) {
+            if (args[i].equals("-threads")) {
+                threads = parseInt(args[i + 1], 1, 100000);
+            } else if (args[i].equals("-chunks")) {
+                chunks = parseInt(args[i + 1], 1, 64);
+            } else if (args[i].equals("-hosts")) {
+                hosts = parseInt(args[i + 1], 1, 10000);
+            } else if (args[i].equals("-rounds")) {
+                rounds = parseInt(args[i + 1], 1, 1000);
+            } else {
+                usage();
+            }
+            i += 2;
+        }
+        if (args.length - i != 1) {
+            usage();
+        }
+        List<InetSocketAddress> targets = BatchScanner.readTargets(args[i]);
+        System.out.printf("%d targets, %d concurrent probes, %d chunks, %d hosts, %d rounds%n",
+                targets.size(), threads, chunks, hosts, rounds);
+
+        run("platform", ScanExecutors::platform, targets, threads, chunks, hosts, rounds);
+        if (ScanExecutors.isVirtualAvailable()) {
+            run("virtual", ScanExecutors::virtual, targets, threads, chunks, hosts, rounds);
+        } else {
+            System.out.println("virtual: skipped (needs Java 21 or later)");
+        }
+    }
+
+    private static void run(String mode, IntFunction<ExecutorService> factory, List<InetSocketAddress> targets,
+                            int threads, int chunks, int hosts, int rounds) throws Exception {
+        // The first round only warms up the JIT and the name caches.
+        scanAll(factory, targets, threads, chunks, hosts);
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            scanAll(factory, targets, threads, chunks, hosts);
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        System.out.printf("%-9s best %8.1f ms  mean %8.1f ms  %8.1f hosts/s%n", mode,
+                best / 1e6, total / 1e6 / rounds, targets.size() * 1e9 / best);
+    }
+
+    private static void scanAll(IntFunction<ExecutorService> factory, List<InetSocketAddress> targets,
+                                int threads, int chunks, int hosts) throws Exception {
+        ExecutorService probes = factory.apply(threads);
+        try {
+            Prober prober = new Prober(Prober.DEFAULT_CONNECT_TIMEOUT, Prober.DEFAULT_READ_TIMEOUT, false);
+            ScanEngine engine = new ScanEngine(probes, prober, chunks, 0);
+            new BatchScanner(engine::scan, hosts, NULL_OUT, null).scanAll(targets);
+        } finally {
+            probes.shutdownNow();
+        }
+    }
+}
@@ -18,7 +18,7 @@ public class AssumptionManager {
             cipherDescription.getExclusions().add("NULL bulk cipher");
         }
         // Exclude anon auth
-        if (name.startsWith("_ANON_")) {
+        if (name.contains("_ANON_")) {
             cipherDescription.getExclusions().add("ANON provide authentication");
         }
         // Cipher
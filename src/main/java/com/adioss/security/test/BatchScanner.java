@@ -0,0 +1,228 @@
+package com.adioss.security.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/*
+ * Scans a list of targets in one JVM: the cipher suite registry and
+ * the JIT-compiled code are shared by all hosts, and the probes of all
+ * hosts go through the same scanner, hence share its connection limit.
+ * Up to "hosts" targets are scanned at the same time; each result is
+ * written as soon as its host is done. With a NdjsonWriter, the facts
+ * of each host are streamed as they are found, and each host ends with
+ * its verdict line. With a ScanJournal, the hosts which an earlier run
+ * finished are skipped, and each host is journaled once its result is
+ * written.
+ */
+public class BatchScanner {
+    private final Function<InetSocketAddress, ScanReport> scanner;
+    private final int hosts;
+    private final PrintStream out;
+    private final Path outDir;
+    private final NdjsonWriter json;
+    private final ScanJournal journal;
+
+    /**
+     * Results go to out, one block per host, or when outDir is not
+     * null to one file per host in that directory.
+     */
+    public BatchScanner(Function<InetSocketAddress, ScanReport> scanner, int hosts,
+                        PrintStream out, Path outDir) {
+        this(scanner, hosts, out, outDir, null, null);
+    }
+
+    /**
+     * NDJSON output: the scanner must report to json (see ScanListener),
+     * which is then given the verdict of each host.
+     */
+    BatchScanner(Function<InetSocketAddress, ScanReport> scanner, int hosts, NdjsonWriter json) {
+        this(scanner, hosts, null, null, json, null);
+    }
+
+    private BatchScanner(Function<InetSocketAddress, ScanReport> scanner, int hosts,
+                         PrintStream out, Path outDir, NdjsonWriter json, ScanJournal journal) {
+        this.scanner = scanner;
+        this.hosts = hosts;
+        this.out = out;
+        this.outDir = outDir;
+        this.json = json;
+        this.journal = journal;
+    }
+
+    /**
+     * The same batch, resumed from and recorded in the journal; the
+     * scanner must report to the journal (see ScanListener).
+     */
+    BatchScanner withJournal(ScanJournal journal) {
+        return new BatchScanner(scanner, hosts, out, outDir, json, journal);
+    }
+
+    /**
+     * Scan all targets; returns the number of targets with a SSL/TLS
+     * server.
+     */
+    public int scanAll(List<InetSocketAddress> targets) throws IOException {
+        if (outDir != null) {
+            Files.createDirectories(outDir);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(hosts, Math.max(1, targets.size())));
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            int found = 0;
+            for (InetSocketAddress target : targets) {
+                Boolean finished = journal == null ? null : journal.finished(target);
+                if (finished != null) {
+                    found += finished ? 1 : 0;
+                    continue;
+                }
+                results.add(executor.submit(() -> {
+                    boolean result = scanOne(target);
+                    if (journal != null) {
+                        journal.finished(target, result);
+                    }
+                    return result;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                try {
+                    if (result.get()) {
+                        found++;
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ie);
+                } catch (ExecutionException ee) {
+                    throw new IOException(ee.getCause());
+                }
+            }
+            return found;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean scanOne(InetSocketAddress target) throws IOException {
+        /*
+         * Targets are kept unresolved until their turn comes, so that
+         * name resolution is spread over the batch too.
+         */
+        InetSocketAddress isa = new InetSocketAddress(target.getHostString(), target.getPort());
+        if (json != null) {
+            return scanOne(target, isa, json);
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(buf, false, "UTF-8");
+        boolean found = false;
+        if (isa.isUnresolved()) {
+            ps.println("Unknown host: " + target.getHostString());
+        } else {
+            try {
+                ScanReport report = scanner.apply(isa);
+                if (report.isEmpty()) {
+                    ps.println((report.incomplete ? "No answer before the scan deadline from "
+                            : "No SSL/TLS server at ") + isa);
+                } else {
+                    report.print(ps);
+                    found = true;
+                }
+            } catch (RuntimeException re) {
+                ps.println("Scan failed: " + re);
+            }
+        }
+        ps.flush();
+        write(target, buf);
+        return found;
+    }
+
+    private boolean scanOne(InetSocketAddress target, InetSocketAddress isa, NdjsonWriter json) {
+        if (isa.isUnresolved()) {
+            json.error(target, "unknown host");
+            return false;
+        }
+        try {
+            ScanReport report = scanner.apply(isa);
+            json.done(report);
+            return !report.isEmpty();
+        } catch (RuntimeException re) {
+            json.error(target, "scan failed: " + re);
+            return false;
+        }
+    }
+
+    private void write(InetSocketAddress target, ByteArrayOutputStream result) throws IOException {
+        String name = target.getHostString() + ":" + target.getPort();
+        if (outDir != null) {
+            Path file = outDir.resolve(name.replace(':', '_') + ".txt");
+            try (OutputStream os = Files.newOutputStream(file)) {
+                result.writeTo(os);
+            }
+        } else {
+            synchronized (out) {
+                out.println("=== " + name + " ===");
+                result.writeTo(out);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Read the targets, one "host[:port]" per line ("[address]:port"
+     * for IPv6); empty lines and lines starting with '#' are skipped.
+     * The file name "-" stands for the standard input.
+     */
+    public static List<InetSocketAddress> readTargets(String file) throws IOException {
+        InputStream in = file.equals("-") ? System.in : Files.newInputStream(Paths.get(file));
+        List<InetSocketAddress> targets = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                targets.add(parseTarget(line));
+            }
+        }
+        return targets;
+    }
+
+    static InetSocketAddress parseTarget(String target) {
+        String host = target;
+        int port = 443;
+        int colon = target.lastIndexOf(':');
+        if (target.startsWith("[")) {
+            int end = target.indexOf(']');
+            if (end < 0) {
+                throw new IllegalArgumentException("invalid target: " + target);
+            }
+            host = target.substring(1, end);
+            if (end + 1 < target.length()) {
+                if (target.charAt(end + 1) != ':') {
+                    throw new IllegalArgumentException("invalid target: " + target);
+                }
+                port = ScanOptions.parseInt(target.substring(end + 2), 1, 65535);
+            }
+        } else if (colon >= 0 && colon == target.indexOf(':')) {
+            host = target.substring(0, colon);
+            port = ScanOptions.parseInt(target.substring(colon + 1), 1, 65535);
+        }
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+}
@@ -0,0 +1,50 @@
+package com.adioss.security.test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Pool of record-sized buffers (MAX_RECORD_LEN + 5 bytes), borrowed by
+ * the record streams and the hello parsers for the duration of one
+ * probe. In a steady-state scan, probes recycle the buffers of the
+ * previous ones instead of allocating 16 KB arrays each time. At most
+ * MAX_POOLED idle buffers are kept.
+ *
+ * A buffer must not be used after it was released; arrays of another
+ * size are ignored by release(), so callers may release whatever they
+ * end up holding.
+ */
+final class BufferPool {
+    static final int BUFFER_SIZE = Constants.MAX_RECORD_LEN + 5;
+    private static final int MAX_POOLED = 512;
+
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger IDLE = new AtomicInteger();
+    static final AtomicLong ALLOCATED = new AtomicLong();
+
+    private BufferPool() {
+    }
+
+    static byte[] acquire() {
+        byte[] buf = POOL.poll();
+        if (buf != null) {
+            IDLE.decrementAndGet();
+            return buf;
+        }
+        ALLOCATED.incrementAndGet();
+        return new byte[BUFFER_SIZE];
+    }
+
+    static void release(byte[] buf) {
+        if (buf == null || buf.length != BUFFER_SIZE) {
+            return;
+        }
+        if (IDLE.incrementAndGet() > MAX_POOLED) {
+            IDLE.decrementAndGet();
+            return;
+        }
+        POOL.offer(buf);
+    }
+}
@@ -0,0 +1,137 @@
+package com.adioss.security.test;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.adioss.security.test.Utils.doSHA1;
+
+/*
+ * Subject names and SHA-1 fingerprints of the certificates seen so far,
+ * keyed by their DER encoding. A server sends the same certificate on
+ * every probe, and load-balanced hosts often share it, so each distinct
+ * certificate is parsed once. The cache is bounded, least recently used
+ * entries being evicted first.
+ */
+class CertificateCache {
+    static final CertificateCache INSTANCE = new CertificateCache(1024);
+
+    private static final InstancePool<CertificateFactory> FACTORY = new InstancePool<>(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException ce) {
+            throw new Error(ce);
+        }
+    }, 16);
+
+    private final Map<Key, Description> entries;
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+
+    CertificateCache(int maxEntries) {
+        this.entries = new LinkedHashMap<Key, Description>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Description> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the description of the certificate encoded in buf[off..off+len).
+     * The returned description has a null name if the certificate could not be
+     * decoded.
+     */
+    Description get(byte[] buf, int off, int len) {
+        Key lookup = new Key(buf, off, len);
+        synchronized (entries) {
+            Description entry = entries.get(lookup);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+        }
+        misses.incrementAndGet();
+
+        /*
+         * Parsing happens outside of the lock; two threads may parse the
+         * same new certificate at once, which is harmless.
+         */
+        Description entry;
+        try {
+            CertificateFactory cf = FACTORY.acquire();
+            X509Certificate xc;
+            try {
+                xc = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(buf, off, len));
+            } finally {
+                FACTORY.release(cf);
+            }
+            entry = new Description(xc.getSubjectX500Principal().toString(), doSHA1(buf, off, len));
+        } catch (CertificateException e) {
+            entry = new Description(null, null);
+        }
+        byte[] der = new byte[len];
+        System.arraycopy(buf, off, der, 0, len);
+        synchronized (entries) {
+            entries.put(new Key(der, 0, len), entry);
+        }
+        return entry;
+    }
+
+    static final class Description {
+        final String name;
+        final String hash;
+
+        Description(String name, String hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+    }
+
+    /*
+     * A range of bytes, compared by value; lookups use the received
+     * buffer directly, only stored keys own a copy.
+     */
+    private static final class Key {
+        private final byte[] buf;
+        private final int off;
+        private final int len;
+        private final int hash;
+
+        Key(byte[] buf, int off, int len) {
+            this.buf = buf;
+            this.off = off;
+            this.len = len;
+            int h = 1;
+            for (int i = off; i < off + len; i++) {
+                h = 31 * h + buf[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            if (hash != k.hash || len != k.len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (buf[off + i] != k.buf[k.off + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
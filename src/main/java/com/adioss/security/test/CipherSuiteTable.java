@@ -0,0 +1,210 @@
+package com.adioss.security.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.adioss.security.test.Constants.*;
+
+/*
+ * The cipher suite registry. Its source is cipher-suites.csv; the build
+ * runs main() on it, which checks every entry (the strength and CBC
+ * status must agree with the suite name, codes must be unique) and
+ * writes cipher-suites.bin, a compact table sorted by code. At startup
+ * CipherSuiteUnion only reads that table. When it is missing (classes
+ * compiled outside of Maven), the CSV is parsed and checked instead.
+ *
+ * Table format: magic, suite count, then for each suite its code (4
+ * bytes), its flags (strength | CBC) and its name (modified UTF-8).
+ */
+public final class CipherSuiteTable {
+    static final String CSV = "cipher-suites.csv";
+    static final String TABLE = "cipher-suites.bin";
+
+    private static final int MAGIC = 0x43535431;
+    private static final int CBC_FLAG = 0x04;
+
+    private CipherSuiteTable() {
+    }
+
+    /**
+     * Generate the table: CipherSuiteTable csvfile tablefile
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CipherSuiteTable csvfile tablefile");
+            System.exit(1);
+        }
+        List<CipherSuite> suites;
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            suites = parse(in);
+        }
+        Path out = Paths.get(args[1]);
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        try (OutputStream os = Files.newOutputStream(out)) {
+            write(suites, os);
+        }
+        System.out.println(suites.size() + " cipher suites written to " + out);
+    }
+
+    /**
+     * The suites of the generated table, or of the CSV if there is no
+     * table.
+     */
+    static List<CipherSuite> load() {
+        try (InputStream table = CipherSuiteTable.class.getResourceAsStream(TABLE)) {
+            if (table != null) {
+                return read(table);
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException("cannot read " + TABLE, ioe);
+        }
+        try (InputStream csv = CipherSuiteTable.class.getResourceAsStream(CSV)) {
+            if (csv == null) {
+                throw new RuntimeException("no " + TABLE + " nor " + CSV + " in the classpath");
+            }
+            return parse(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        } catch (IOException ioe) {
+            throw new RuntimeException("cannot read " + CSV, ioe);
+        }
+    }
+
+    /**
+     * Parse and check the CSV: "code,name,class" lines, where class is
+     * one of N, S4, S8, B4, B5, B8; '#' starts a comment. The suites
+     * are returned sorted by code.
+     */
+    static List<CipherSuite> parse(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        List<CipherSuite> suites = new ArrayList<>();
+        Set<Integer> codes = new HashSet<>();
+        boolean header = true;
+        int lineNumber = 0;
+        for (String line; (line = in.readLine()) != null; ) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (header) {
+                header = false;
+                if (line.equals("code,name,class")) {
+                    continue;
+                }
+            }
+            String[] fields = line.split(",", -1);
+            if (fields.length != 3 || !fields[0].startsWith("0x")) {
+                throw new IllegalArgumentException(CSV + ":" + lineNumber + ": malformed line: " + line);
+            }
+            CipherSuite cs = new CipherSuite();
+            try {
+                cs.suite = Integer.parseInt(fields[0].substring(2), 16);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException(CSV + ":" + lineNumber + ": bad code: " + fields[0]);
+            }
+            cs.name = fields[1];
+            switch (fields[2]) {
+                case "N":
+                    cs.strength = CLEAR;
+                    break;
+                case "S4":
+                    cs.strength = WEAK;
+                    break;
+                case "S8":
+                    cs.strength = STRONG;
+                    break;
+                case "B4":
+                    cs.strength = WEAK;
+                    cs.isCBC = true;
+                    break;
+                case "B5":
+                    cs.strength = MEDIUM;
+                    cs.isCBC = true;
+                    break;
+                case "B8":
+                    cs.strength = STRONG;
+                    cs.isCBC = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException(CSV + ":" + lineNumber + ": bad class: " + fields[2]);
+            }
+            check(cs);
+            if (!codes.add(cs.suite)) {
+                throw new IllegalArgumentException(CSV + ":" + lineNumber
+                        + String.format(": duplicate code 0x%04X", cs.suite));
+            }
+            suites.add(cs);
+        }
+        suites.sort((a, b) -> Integer.compare(a.suite, b.suite));
+        return suites;
+    }
+
+    /**
+     * Consistency test: the strength and CBC status can normally be
+     * inferred from the name itself.
+     */
+    static void check(CipherSuite cs) {
+        String name = cs.name;
+        boolean inferredCBC = name.contains("_CBC_");
+        int inferredStrength;
+        if (name.contains("_NULL_")) {
+            inferredStrength = CLEAR;
+        } else if (name.contains("DES40") || name.contains("_40_") || name.contains("EXPORT40")) {
+            inferredStrength = WEAK;
+        } else if ((name.contains("_DES_") || name.contains("DES_64")) && !name.contains("DES_192")) {
+            inferredStrength = MEDIUM;
+        } else {
+            inferredStrength = STRONG;
+        }
+        if (inferredStrength != cs.strength || inferredCBC != cs.isCBC) {
+            throw new IllegalArgumentException("wrong classification: " + name);
+        }
+    }
+
+    static void write(List<CipherSuite> suites, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeShort(suites.size());
+        for (CipherSuite cs : suites) {
+            out.writeInt(cs.suite);
+            out.writeByte(cs.strength | (cs.isCBC ? CBC_FLAG : 0));
+            out.writeUTF(cs.name);
+        }
+        out.flush();
+    }
+
+    static List<CipherSuite> read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a cipher suite table");
+        }
+        int n = in.readUnsignedShort();
+        List<CipherSuite> suites = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            CipherSuite cs = new CipherSuite();
+            cs.suite = in.readInt();
+            int flags = in.readUnsignedByte();
+            cs.strength = flags & 0x03;
+            cs.isCBC = (flags & CBC_FLAG) != 0;
+            cs.name = in.readUTF();
+            suites.add(cs);
+        }
+        return suites;
+    }
+}
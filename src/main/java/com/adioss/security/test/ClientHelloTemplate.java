@@ -0,0 +1,133 @@
+package com.adioss.security.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import static com.adioss.security.test.Constants.HANDSHAKE;
+import static com.adioss.security.test.Constants.MAX_RECORD_LEN;
+import static com.adioss.security.test.Constants.RNG;
+import static com.adioss.security.test.Utils.enc16be;
+import static com.adioss.security.test.Utils.enc24be;
+import static com.adioss.security.test.Utils.enc32be;
+
+/*
+ * Encodes the same ClientHello as TestSSLServer.makeClientHello(),
+ * already framed as a handshake record, directly into a buffer: the
+ * fixed part of the message is precomputed per protocol version, and
+ * only the lengths, the client random and the cipher suite list are
+ * patched for each probe. send() encodes into a buffer borrowed from
+ * BufferPool, so the elimination probes allocate nothing to build their
+ * hellos but the 28 bytes of client random.
+ *
+ * Layout:
+ *   record header (5) | handshake header (4) | version (2) |
+ *   random (32) | session ID (1) | suites (2 + 2n) | compression (3)
+ */
+final class ClientHelloTemplate {
+    private static final int PREFIX_LEN = 5 + 4 + 2;
+    private static final int RANDOM_OFF = PREFIX_LEN;
+    private static final int SUITES_OFF = RANDOM_OFF + 32 + 1;
+
+    private static final byte[][] PREFIXES = new byte[4][];
+
+    static {
+        for (int v = 0x0300; v <= 0x0303; v++) {
+            PREFIXES[v - 0x0300] = prefix(v);
+        }
+    }
+
+    private ClientHelloTemplate() {
+    }
+
+    private static byte[] prefix(int version) {
+        byte[] p = new byte[PREFIX_LEN];
+        p[0] = (byte) HANDSHAKE;
+        enc16be(version, p, 1);
+        p[5] = 1;
+        enc16be(version, p, 9);
+        return p;
+    }
+
+    /**
+     * Length of the record carrying a ClientHello with n cipher suites.
+     */
+    static int length(int n) {
+        return SUITES_OFF + 2 + 2 * n + 3;
+    }
+
+    /**
+     * Encode the record into buf (which must hold length(n) bytes);
+     * returns the record length.
+     */
+    static int write(int version, Collection<Integer> cipherSuites, byte[] buf) {
+        int n = cipherSuites.size();
+        int len = length(n);
+        if (len - 5 > MAX_RECORD_LEN) {
+            throw new IllegalArgumentException("too many cipher suites: " + n);
+        }
+        byte[] prefix = version >= 0x0300 && version <= 0x0303 ? PREFIXES[version - 0x0300] : prefix(version);
+        System.arraycopy(prefix, 0, buf, 0, PREFIX_LEN);
+        enc16be(len - 5, buf, 3);
+        enc24be(len - 9, buf, 6);
+
+        /*
+         * Client random: the current time over 32 bits, then random
+         * bytes; the session ID is empty.
+         */
+        enc32be((int) (System.currentTimeMillis() / 1000), buf, RANDOM_OFF);
+        byte[] rand = new byte[28];
+        RNG.nextBytes(rand);
+        System.arraycopy(rand, 0, buf, RANDOM_OFF + 4, 28);
+        buf[RANDOM_OFF + 32] = 0;
+
+        int j = SUITES_OFF;
+        enc16be(n * 2, buf, j);
+        j += 2;
+        if (cipherSuites instanceof SuiteSet) {
+            SuiteSet set = (SuiteSet) cipherSuites;
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                enc16be(s, buf, j);
+                j += 2;
+            }
+        } else {
+            for (int s : cipherSuites) {
+                enc16be(s, buf, j);
+                j += 2;
+            }
+        }
+
+        /*
+         * Deflate (1) and no compression (0), Deflate preferred.
+         */
+        buf[j] = 2;
+        buf[j + 1] = 1;
+        buf[j + 2] = 0;
+        return len;
+    }
+
+    /**
+     * The record in a new array of the exact size, for callers which
+     * must keep it until it is sent.
+     */
+    static byte[] encode(int version, Collection<Integer> cipherSuites) {
+        byte[] buf = new byte[length(cipherSuites.size())];
+        write(version, cipherSuites, buf);
+        return buf;
+    }
+
+    /**
+     * Write the record to out in one call, from a pooled buffer (write()
+     * rejects records which would not fit in it).
+     */
+    static void send(OutputStream out, int version, Collection<Integer> cipherSuites) throws IOException {
+        byte[] buf = BufferPool.acquire();
+        try {
+            int len = write(version, cipherSuites, buf);
+            out.write(buf, 0, len);
+            out.flush();
+        } finally {
+            BufferPool.release(buf);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.adioss.security.test;
+
+import com.adioss.security.AssumptionManager;
+import com.adioss.security.model.CipherDescription;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.adioss.security.test.CipherSuiteUnion.ALL_SUITES;
+import static com.adioss.security.test.CipherSuiteUnion.SUITES_BY_CODE;
+import static com.adioss.security.test.ScanEngine.await;
+import static com.adioss.security.test.TestSSLServer.*;
+
+/*
+ * Compliance scan: does the server accept any of the suites which
+ * AssumptionManager excludes (RC4, DES, 3DES, EXPORT, NULL, anon,
+ * MD5 and SHA-1 MACs), or SSLv2? Instead of enumerating all supported
+ * suites, each version is offered the banned suites only, in a single
+ * ClientHello. A refusal clears the version at once. An answer names
+ * one offending suite; only then is the version drilled into.
+ *
+ * The drill-down is the ordinary elimination of the enumeration
+ * (supportedSuites(), over chunks of the banned suites), not a halving
+ * group test: each further probe either names another offending suite
+ * or ends the search of its chunk, so d offending suites cost d + 1
+ * probes per chunk. Halving the accepted group would only pay off
+ * with a yes/no answer; here it would cost about d * log2(n) probes.
+ *
+ * A clean host costs six connections: the four banned-suite probes,
+ * the SSLv2 probe, and one probe with all suites which tells that
+ * there is a SSL/TLS server at all, and reads its certificate.
+ */
+public class ComplianceEngine {
+    private static final AssumptionManager ASSUMPTIONS = new AssumptionManager();
+
+    static final SuiteSet BANNED_SUITES = new SuiteSet();
+
+    static {
+        for (int suite = ALL_SUITES.nextSetBit(0); suite >= 0; suite = ALL_SUITES.nextSetBit(suite + 1)) {
+            if (!exclusions(suite).isEmpty()) {
+                BANNED_SUITES.add(suite);
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Prober prober;
+    private final int chunks;
+    private final long deadlineMillis;
+    private final ScanListener listener;
+
+    public ComplianceEngine(ExecutorService executor, Prober prober, int chunks, long deadlineMillis) {
+        this(executor, prober, chunks, deadlineMillis, ScanListener.NONE);
+    }
+
+    /**
+     * The listener is told of the versions, the accepted banned suites
+     * and the certificates as they are found.
+     */
+    ComplianceEngine(ExecutorService executor, Prober prober, int chunks, long deadlineMillis,
+                     ScanListener listener) {
+        this.executor = executor;
+        this.prober = prober;
+        this.chunks = chunks;
+        this.deadlineMillis = deadlineMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * The reasons why AssumptionManager excludes a SSLv3/TLS suite;
+     * empty if it does not.
+     */
+    static List<String> exclusions(int suite) {
+        CipherDescription description = new CipherDescription(SUITES_BY_CODE[suite].name, true);
+        ASSUMPTIONS.validateAssumption(description);
+        return description.getExclusions();
+    }
+
+    public ScanReport scan(InetSocketAddress isa) {
+        ScanReport report = new ScanReport(isa, listener);
+        report.bannedSuites = new TreeMap<>();
+        Deadline deadline = Deadline.after(deadlineMillis);
+        Prober prober = this.prober.withDeadline(deadline);
+        ScanEvents.Phase detection = ScanEvents.beginPhase(ScanEvents.VERSION_DETECTION, isa, 0, 1);
+
+        Future<ServerHello> anyProbe = executor.submit(() -> prober.connect(isa, 0x0303, ALL_SUITES, false));
+        Map<Integer, Future<ServerHello>> bannedProbes = new TreeMap<>();
+        for (int v = 0x0300; v <= 0x0303; v++) {
+            final int version = v;
+            bannedProbes.put(version, executor.submit(() -> prober.connect(isa, version, BANNED_SUITES)));
+        }
+        Future<ServerHelloSSLv2> v2Probe = executor.submit(() -> prober.connectV2(isa));
+
+        ServerHello any = await(anyProbe);
+        if (any != null) {
+            report.addVersion(any.protocolVersion);
+            if (any.serverCertName != null) {
+                report.addCertificate(any.serverCertHash + ": " + any.serverCertName);
+            }
+        }
+        Set<Integer> offending = new TreeSet<>();
+        for (Future<ServerHello> bannedProbe : bannedProbes.values()) {
+            ServerHello serverHello = await(bannedProbe);
+            if (serverHello != null) {
+                report.addVersion(serverHello.protocolVersion);
+                offending.add(serverHello.protocolVersion);
+            }
+        }
+        ServerHelloSSLv2 serverHelloSSLv2 = await(v2Probe);
+        detection.done();
+        if (serverHelloSSLv2 != null) {
+            report.addVersion(0x0200);
+            Set<Integer> vc2 = new TreeSet<>();
+            for (int cipherSuite : serverHelloSSLv2.cipherSuites) {
+                vc2.add(cipherSuite);
+                report.addSuite(0x0200, cipherSuite);
+            }
+            report.supportedCipherSuitesV2 = vc2;
+            if (serverHelloSSLv2.serverCertName != null) {
+                report.addCertificate(serverHelloSSLv2.serverCertHash + ": " + serverHelloSSLv2.serverCertName);
+            }
+        }
+
+        /*
+         * Drill down into the versions which accepted a banned suite;
+         * the first elimination step is the banned-suite probe itself,
+         * after the suites resumed from an earlier scan.
+         */
+        Map<Integer, List<Future<SuiteSet>>> drillDowns = new TreeMap<>();
+        for (int version : offending) {
+            List<Future<SuiteSet>> futures = new ArrayList<>();
+            SuiteSet candidates = new SuiteSet(BANNED_SUITES);
+            futures.add(CompletableFuture.completedFuture(report.resume(version, candidates)));
+            SuiteSet found = replayCached(prober.cache, version, candidates, prober.helloOnly, report);
+            futures.add(CompletableFuture.completedFuture(found));
+            List<SuiteSet> split = splitSuites(candidates, chunks);
+            ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.ENUMERATION, isa, version, split.size());
+            for (SuiteSet chunk : split) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return supportedSuites(prober, isa, version, chunk, report);
+                    } finally {
+                        phase.done();
+                    }
+                }));
+            }
+            drillDowns.put(version, futures);
+        }
+        for (Map.Entry<Integer, List<Future<SuiteSet>>> drillDown : drillDowns.entrySet()) {
+            SuiteSet accepted = new SuiteSet();
+            for (Future<SuiteSet> chunk : drillDown.getValue()) {
+                accepted.or(await(chunk));
+            }
+            report.bannedSuites.put(drillDown.getKey(), accepted);
+        }
+        report.incomplete = deadline.wasReached();
+        report.connectionsSaved = prober.cache.saved();
+        return report;
+    }
+}
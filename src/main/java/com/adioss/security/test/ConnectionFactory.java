@@ -0,0 +1,269 @@
+package com.adioss.security.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Opens and closes the probe connections of both engines. The scanner
+ * is always the side which closes, so each probe normally leaves a
+ * socket in TIME_WAIT on the scanning host, holding its ephemeral port
+ * for a minute or more: at a few thousand probes per second the local
+ * port range runs out. Hence:
+ *
+ * - with resetOnClose, connections are closed with SO_LINGER 0, i.e.
+ *   with a RST once the answer is read: no TIME_WAIT at all;
+ * - connections may be bound to a local address, and to local ports
+ *   taken in turn from [lowPort, highPort] (with SO_REUSEADDR), to use
+ *   another address or a wider range than the system's ephemeral one;
+ * - the socket buffers may be sized down: a probe sends one hello and
+ *   reads a few KB, so big default buffers only cost kernel memory.
+ *
+ * Counters tell how many connections were opened and reset, how many
+ * sockets are open at the moment and at most, and how often a local
+ * port of the range was busy.
+ */
+final class ConnectionFactory implements Transport {
+    static final ConnectionFactory DEFAULT = new ConnectionFactory(false, null, 0, 0, 0, 0);
+
+    private final boolean resetOnClose;
+    private final InetAddress localAddress;
+    private final int lowPort;
+    private final int highPort;
+    private final int sendBuffer;
+    private final int receiveBuffer;
+    private final AtomicInteger nextPort = new AtomicInteger();
+
+    final AtomicLong opened = new AtomicLong();
+    final AtomicLong reset = new AtomicLong();
+    final AtomicLong portsBusy = new AtomicLong();
+    final AtomicInteger inUse = new AtomicInteger();
+    final AtomicInteger peakInUse = new AtomicInteger();
+
+    /**
+     * localAddress may be null (any address); lowPort 0 means system
+     * chosen ports; buffer sizes of 0 keep the system defaults.
+     */
+    ConnectionFactory(boolean resetOnClose, InetAddress localAddress, int lowPort, int highPort,
+                      int sendBuffer, int receiveBuffer) {
+        if (lowPort < 0 || highPort < lowPort || highPort > 65535) {
+            throw new IllegalArgumentException("invalid port range: " + lowPort + "-" + highPort);
+        }
+        this.resetOnClose = resetOnClose;
+        this.localAddress = localAddress;
+        this.lowPort = lowPort;
+        this.highPort = highPort;
+        this.sendBuffer = sendBuffer;
+        this.receiveBuffer = receiveBuffer;
+    }
+
+    @Override
+    public Connection connect(InetSocketAddress isa, int connectTimeout, int readTimeout) throws IOException {
+        Socket socket = open(isa, connectTimeout);
+        try {
+            socket.setSoTimeout(readTimeout);
+        } catch (IOException ioe) {
+            close(socket);
+            throw ioe;
+        }
+        return new Connection() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            public void close() {
+                ConnectionFactory.this.close(socket);
+            }
+        };
+    }
+
+    /**
+     * A connected socket; the read timeout is left to the caller.
+     */
+    Socket open(InetSocketAddress isa, int connectTimeout) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Socket socket = new Socket();
+            try {
+                configure(socket);
+                if (lowPort != 0) {
+                    socket.setReuseAddress(true);
+                    bindInRange(port -> socket.bind(new InetSocketAddress(localAddress, port)));
+                } else if (localAddress != null) {
+                    socket.bind(new InetSocketAddress(localAddress, 0));
+                }
+                opening();
+            } catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+            try {
+                socket.connect(isa, connectTimeout);
+                return socket;
+            } catch (BindException be) {
+                close(socket);
+                if (!retryConnect(attempt)) {
+                    throw be;
+                }
+            } catch (IOException ioe) {
+                close(socket);
+                throw ioe;
+            }
+        }
+    }
+
+    /**
+     * A non-blocking channel, connected or with its connection pending
+     * (to be completed with finishConnect()).
+     */
+    SocketChannel openChannel(InetSocketAddress isa) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                if (sendBuffer > 0) {
+                    channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBuffer);
+                }
+                if (receiveBuffer > 0) {
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBuffer);
+                }
+                if (lowPort != 0) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                    bindInRange(port -> channel.bind(new InetSocketAddress(localAddress, port)));
+                } else if (localAddress != null) {
+                    channel.bind(new InetSocketAddress(localAddress, 0));
+                }
+                opening();
+            } catch (IOException ioe) {
+                channel.close();
+                throw ioe;
+            }
+            try {
+                channel.connect(isa);
+                return channel;
+            } catch (BindException be) {
+                close(channel);
+                if (!retryConnect(attempt)) {
+                    throw be;
+                }
+            } catch (IOException ioe) {
+                close(channel);
+                throw ioe;
+            }
+        }
+    }
+
+    /*
+     * With SO_REUSEADDR, a local port of the range may still be bound
+     * while the connection which used it with the same server is in
+     * TIME_WAIT: the connect fails, another port is taken.
+     */
+    private boolean retryConnect(int attempt) {
+        if (lowPort == 0 || attempt >= highPort - lowPort) {
+            return false;
+        }
+        portsBusy.incrementAndGet();
+        return true;
+    }
+
+    void close(Socket socket) {
+        try {
+            // a socket which never connected has nothing to reset
+            if (resetOnClose && socket.isConnected() && !socket.isClosed()) {
+                socket.setSoLinger(true, 0);
+                reset.incrementAndGet();
+            }
+        } catch (IOException ioe) {
+            // ignored, the socket is closed normally
+        }
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            // ignored
+        }
+        inUse.decrementAndGet();
+    }
+
+    void close(SocketChannel channel) {
+        try {
+            if (resetOnClose && channel.isConnected()) {
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+                reset.incrementAndGet();
+            }
+        } catch (IOException ioe) {
+            // ignored, the channel is closed normally
+        }
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // ignored
+        }
+        inUse.decrementAndGet();
+    }
+
+    /**
+     * Whether anything differs from a plain connection (for reporting).
+     */
+    boolean isTuned() {
+        return resetOnClose || localAddress != null || lowPort != 0 || sendBuffer > 0 || receiveBuffer > 0;
+    }
+
+    String counters() {
+        return opened.get() + " connection(s) opened, " + reset.get() + " reset on close, peak "
+                + peakInUse.get() + " open at once" + (lowPort == 0 ? ""
+                : ", " + portsBusy.get() + " busy local port(s) skipped");
+    }
+
+    private void configure(Socket socket) throws IOException {
+        if (sendBuffer > 0) {
+            socket.setSendBufferSize(sendBuffer);
+        }
+        if (receiveBuffer > 0) {
+            socket.setReceiveBufferSize(receiveBuffer);
+        }
+    }
+
+    private void opening() {
+        opened.incrementAndGet();
+        int n = inUse.incrementAndGet();
+        for (int peak = peakInUse.get(); n > peak && !peakInUse.compareAndSet(peak, n); peak = peakInUse.get()) {
+            // retry
+        }
+    }
+
+    private interface Binder {
+        void bind(int port) throws IOException;
+    }
+
+    /**
+     * Bind to the next free port of the range, each port being tried at
+     * most once.
+     */
+    private void bindInRange(Binder binder) throws IOException {
+        int size = highPort - lowPort + 1;
+        for (int i = 0; i < size; i++) {
+            int port = lowPort + Math.floorMod(nextPort.getAndIncrement(), size);
+            try {
+                binder.bind(port);
+                return;
+            } catch (BindException be) {
+                portsBusy.incrementAndGet();
+            }
+        }
+        throw new BindException("no free local port in " + lowPort + "-" + highPort);
+    }
+}
@@ -0,0 +1,77 @@
+package com.adioss.security.test;
+
+/*
+ * Time budget of a scan. Probes check it before connecting and clip
+ * their socket timeouts to what is left of it, so that once it is
+ * reached the outstanding probes end quickly and the scan returns what
+ * it collected so far. A probe which the deadline skipped or cut short
+ * calls markReached(), and the report of the scan is then marked
+ * incomplete.
+ */
+class Deadline {
+    static final Deadline NONE = new Deadline(0);
+
+    private final long end;
+    private volatile boolean reached;
+
+    private Deadline(long end) {
+        this.end = end;
+    }
+
+    /**
+     * A deadline some milliseconds from now; 0 means no deadline.
+     */
+    static Deadline after(long millis) {
+        if (millis <= 0) {
+            return NONE;
+        }
+        return new Deadline(System.nanoTime() + millis * 1000000L);
+    }
+
+    /**
+     * Milliseconds left (at least 1), or 0 when the deadline is reached.
+     * Integer.MAX_VALUE stands for "no deadline".
+     */
+    int remainingMillis() {
+        if (this == NONE) {
+            return Integer.MAX_VALUE;
+        }
+        long left = (end - System.nanoTime()) / 1000000L;
+        if (left <= 0) {
+            return 0;
+        }
+        return (int) Math.min(left, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Clip a socket timeout (0 meaning infinite) to the time left.
+     */
+    int clip(int timeout) {
+        int left = remainingMillis();
+        if (left == Integer.MAX_VALUE) {
+            return timeout;
+        }
+        if (left == 0) {
+            return 1;
+        }
+        return timeout == 0 ? left : Math.min(timeout, left);
+    }
+
+    boolean isReached() {
+        return remainingMillis() == 0;
+    }
+
+    /**
+     * Record that a probe was skipped or cut short by this deadline.
+     */
+    void markReached() {
+        reached = true;
+    }
+
+    /**
+     * Whether some probe was skipped or cut short by this deadline.
+     */
+    boolean wasReached() {
+        return reached;
+    }
+}
@@ -15,7 +15,7 @@ import static com.adioss.security.test.Utils.readFully;
 class InputRecord extends InputStream {
 
     private InputStream in;
-    private byte[] buffer = new byte[Constants.MAX_RECORD_LEN + 5];
+    private byte[] buffer = BufferPool.acquire();
     private int ptr, end;
     private int version;
     private int type;
@@ -66,6 +66,15 @@ class InputRecord extends InputStream {
         return buffer[ptr++] & 0xFF;
     }
 
+    /**
+     * Return the buffer to the pool; the underlying stream is not
+     * closed.
+     */
+    public void close() {
+        BufferPool.release(buffer);
+        buffer = null;
+    }
+
     public int read(byte[] buf, int off, int len)
             throws IOException {
         while (ptr == end) {
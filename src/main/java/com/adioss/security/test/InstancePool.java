@@ -0,0 +1,47 @@
+package com.adioss.security.test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * A few reusable instances of a class which is costly to create and not
+ * thread-safe (MessageDigest, CertificateFactory, SecureRandom), borrowed
+ * for the duration of one call. Unlike a ThreadLocal, this keeps working
+ * when each probe runs on a thread of its own (-virtual), and never
+ * holds more than maxIdle idle instances, whatever the number of
+ * threads.
+ */
+final class InstancePool<T> {
+    private final Supplier<T> factory;
+    private final int maxIdle;
+    private final Queue<T> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idle = new AtomicInteger();
+
+    InstancePool(Supplier<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    T acquire() {
+        T instance = pool.poll();
+        if (instance != null) {
+            idle.decrementAndGet();
+            return instance;
+        }
+        return factory.get();
+    }
+
+    /**
+     * Give back an instance, in the state the next caller expects (e.g.
+     * a reset digest).
+     */
+    void release(T instance) {
+        if (idle.incrementAndGet() > maxIdle) {
+            idle.decrementAndGet();
+            return;
+        }
+        pool.offer(instance);
+    }
+}
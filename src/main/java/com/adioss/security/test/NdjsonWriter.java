@@ -0,0 +1,235 @@
+package com.adioss.security.test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static com.adioss.security.test.TestSSLServer.cipherSuiteString;
+import static com.adioss.security.test.TestSSLServer.cipherSuiteStringV2;
+import static com.adioss.security.test.TestSSLServer.versionString;
+
+/*
+ * Streaming output of -json: one JSON object per line (NDJSON), written
+ * as each fact is found rather than once the host is done.
+ *
+ *   {"event":"version","target":"host:443","version":"TLSv1.2"}
+ *   {"event":"suite","target":"host:443","version":"TLSv1.2","suite":"TLS_...","code":"0xC02F"}
+ *   {"event":"suite",...,"code":"0xC02F","inferred":true}  (-speculative)
+ *   {"event":"certificate","target":"host:443","sha1":"...","subject":"CN=..."}
+ *   {"event":"order","target":"host:443","version":"TLSv1.2","suites":[...],...}
+ *   {"event":"verdict","target":"host:443","found":true,...}
+ *   {"event":"error","target":"host:443","message":"..."}
+ *
+ * The lines of concurrent scans interleave; each one names its target,
+ * and each host ends with its verdict or error line. Lines go through
+ * one buffered writer, flushed after each verdict and error, so that a
+ * large batch costs a few big writes instead of one per line. Like a
+ * PrintStream, the writer never throws: after an I/O error it drops
+ * the lines, and checkError() tells.
+ */
+final class NdjsonWriter implements ScanListener {
+    private static final String[] STRENGTHS = {"none", "weak", "medium", "strong"};
+
+    private final Writer out;
+    private boolean error;
+
+    NdjsonWriter(OutputStream out) {
+        this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    NdjsonWriter(Writer out) {
+        this.out = new BufferedWriter(out, 1 << 16);
+    }
+
+    @Override
+    public void version(InetSocketAddress isa, int version) {
+        StringBuilder sb = begin("version", isa);
+        field(sb, "version", versionString(version));
+        end(sb, false);
+    }
+
+    @Override
+    public void suite(InetSocketAddress isa, int version, int suite) {
+        suite(isa, version, suite, false);
+    }
+
+    /**
+     * The inferred suites are suite lines too, flagged as such: they were
+     * not probed.
+     */
+    @Override
+    public void inferred(InetSocketAddress isa, int version, SuiteSet suites) {
+        for (int s = suites.nextSetBit(0); s >= 0; s = suites.nextSetBit(s + 1)) {
+            suite(isa, version, s, true);
+        }
+    }
+
+    private void suite(InetSocketAddress isa, int version, int suite, boolean inferred) {
+        StringBuilder sb = begin("suite", isa);
+        field(sb, "version", versionString(version));
+        if (version == 0x0200) {
+            field(sb, "suite", cipherSuiteStringV2(suite));
+            field(sb, "code", String.format("0x%06X", suite));
+        } else {
+            field(sb, "suite", cipherSuiteString(suite));
+            field(sb, "code", String.format("0x%04X", suite));
+        }
+        if (inferred) {
+            field(sb, "inferred", true);
+        }
+        end(sb, false);
+    }
+
+    @Override
+    public void certificate(InetSocketAddress isa, String certID) {
+        StringBuilder sb = begin("certificate", isa);
+        int colon = certID.indexOf(": ");
+        field(sb, "sha1", certID.substring(0, colon));
+        field(sb, "subject", certID.substring(colon + 2));
+        end(sb, false);
+    }
+
+    /**
+     * The end of the scan of a host: the preference orders, then the
+     * verdict, computed from the complete report.
+     */
+    void done(ScanReport report) {
+        InetSocketAddress isa = report.address;
+        for (Map.Entry<Integer, PreferenceOrder> entry : report.preferenceOrders.entrySet()) {
+            PreferenceOrder order = entry.getValue();
+            StringBuilder sb = begin("order", isa);
+            field(sb, "version", versionString(entry.getKey()));
+            sb.append(",\"suites\":[");
+            for (int i = 0; i < order.suites.length; i++) {
+                sb.append(i == 0 ? "" : ",");
+                string(sb, cipherSuiteString(order.suites[i]));
+            }
+            sb.append(']');
+            field(sb, "followsClient", order.followsClient);
+            field(sb, "complete", order.complete);
+            end(sb, false);
+        }
+
+        StringBuilder sb = begin("verdict", isa);
+        field(sb, "found", !report.isEmpty());
+        field(sb, "incomplete", report.incomplete);
+        if (!report.isEmpty()) {
+            if (report.bannedSuites != null) {
+                field(sb, "compliance", report.bannedAccepted() ? "failed" : "passed");
+            } else {
+                sb.append(",\"speculative\":[");
+                boolean first = true;
+                for (int version : report.speculativeVersions) {
+                    sb.append(first ? "" : ",");
+                    string(sb, versionString(version));
+                    first = false;
+                }
+                sb.append(']');
+                field(sb, "minStrength", STRENGTHS[report.minStrength()]);
+                field(sb, "maxStrength", STRENGTHS[report.maxStrength()]);
+                field(sb, "beast", report.vulnBEAST);
+                field(sb, "crime", report.compress);
+            }
+            sb.append(",\"connectionsSaved\":").append(report.connectionsSaved);
+        }
+        end(sb, true);
+    }
+
+    /**
+     * A host which could not be scanned (unknown host, failed scan).
+     */
+    void error(InetSocketAddress isa, String message) {
+        StringBuilder sb = begin("error", isa);
+        field(sb, "message", message);
+        end(sb, true);
+    }
+
+    synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException ioe) {
+            error = true;
+        }
+    }
+
+    /**
+     * Flush the lines, and tell whether any could not be written.
+     */
+    boolean checkError() {
+        flush();
+        synchronized (this) {
+            return error;
+        }
+    }
+
+    private static StringBuilder begin(String event, InetSocketAddress isa) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"event\":\"").append(event).append('"');
+        field(sb, "target", isa.getHostString() + ":" + isa.getPort());
+        return sb;
+    }
+
+    private synchronized void end(StringBuilder sb, boolean flush) {
+        if (error) {
+            return;
+        }
+        sb.append("}\n");
+        try {
+            out.append(sb);
+            if (flush) {
+                out.flush();
+            }
+        } catch (IOException ioe) {
+            error = true;
+        }
+    }
+
+    private static void field(StringBuilder sb, String name, String value) {
+        sb.append(",\"").append(name).append("\":");
+        string(sb, value);
+    }
+
+    private static void field(StringBuilder sb, String name, boolean value) {
+        sb.append(",\"").append(name).append("\":").append(value);
+    }
+
+    /**
+     * Append a JSON string: quotes, backslashes and control characters
+     * are escaped; other characters go as they are (UTF-8 output).
+     */
+    static void string(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,733 @@
+package com.adioss.security.test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+import static com.adioss.security.test.CipherSuiteUnion.ALL_SUITES;
+import static com.adioss.security.test.Constants.SSL2_CLIENT_HELLO;
+import static com.adioss.security.test.TestSSLServer.*;
+
+/*
+ * Non-blocking counterpart of TestSSLServer.connect() and connectV2():
+ * a single thread runs a Selector over all the probes in flight, sends
+ * the hello messages and decodes the answers as bytes arrive.
+ *
+ * Like Prober.connect(), a probe which fails or times out yields null;
+ * the connect and read timeouts, and the scan deadline, are enforced by
+ * the selector loop itself. The returned futures
+ * are completed on the selector thread, hence dependent stages must not
+ * block; starting new probes from them is fine.
+ *
+ * Once the selector loop has stopped (close(), or a selector failure),
+ * the probes still queued or in flight fail with an exception, and so
+ * do the probes submitted afterwards, e.g. by the dependent stages of
+ * the failed ones: a scan in progress fails instead of waiting forever.
+ *
+ * With a TargetThrottle, waiting probes start only when their target
+ * and subnet allow it, and probes which failed on a congestion signal
+ * are submitted again (see Prober). Probes are recorded in
+ * ScanMetrics.INSTANCE and ScanEvents like those of Prober, and scan
+ * phases in ScanEvents like those of ScanEngine.
+ */
+public class NioProbeEngine implements Closeable {
+    static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    private static final long THROTTLE_POLL_MILLIS = 10;
+
+    private final Selector selector;
+    private final Queue<Probe<?>> submitted = new ConcurrentLinkedQueue<>();
+    private final Queue<Probe<?>> waiting = new ArrayDeque<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(Constants.MAX_RECORD_LEN + 5);
+    private final int maxInFlight;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean helloOnly;
+    private final TargetThrottle throttle;
+    private final ConnectionFactory connections;
+    private final Thread thread;
+    private int inFlight;
+    private volatile boolean closed;
+    private volatile Exception stopped;
+
+    /**
+     * Timeouts are in milliseconds; 0 means no timeout. The hello-only
+     * mode is the one of Prober.
+     */
+    public NioProbeEngine(int maxInFlight, int connectTimeout, int readTimeout, boolean helloOnly)
+            throws IOException {
+        this(maxInFlight, connectTimeout, readTimeout, helloOnly, null, ConnectionFactory.DEFAULT);
+    }
+
+    NioProbeEngine(int maxInFlight, int connectTimeout, int readTimeout, boolean helloOnly,
+                   TargetThrottle throttle, ConnectionFactory connections) throws IOException {
+        this.maxInFlight = maxInFlight;
+        this.throttle = throttle;
+        this.connections = connections;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.helloOnly = helloOnly;
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, "nio-probe-engine");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Asynchronous TestSSLServer.connect(): send a ClientHello and
+     * decode the ServerHello.
+     */
+    public CompletableFuture<ServerHello> connect(InetSocketAddress isa, int version,
+                                                  Collection<Integer> cipherSuites) {
+        return connect(isa, version, cipherSuites, helloOnly, Deadline.NONE, null);
+    }
+
+    /**
+     * Same as above within a scan: a hello already answered in the
+     * probe cache (if not null) is not sent again.
+     */
+    CompletableFuture<ServerHello> connect(InetSocketAddress isa, int version, Collection<Integer> cipherSuites,
+                                           boolean helloOnly, Deadline deadline, ProbeCache cache) {
+        if (cache != null) {
+            ServerHello serverHello = cache.lookup(version, cipherSuites, helloOnly);
+            if (serverHello != null) {
+                return CompletableFuture.completedFuture(serverHello);
+            }
+        }
+        ByteBuffer hello = ByteBuffer.wrap(ClientHelloTemplate.encode(version, cipherSuites));
+        boolean acceptedOffer = throttle != null && throttle.isAcceptedOffer(isa, version, cipherSuites);
+        CompletableFuture<ServerHello> probe = submit(() -> new Probe<>(isa, version, cipherSuites.size(),
+                acceptedOffer, hello.duplicate(), new ServerHelloDecoder(helloOnly, isa, version), deadline), 0);
+        if (cache == null) {
+            return probe;
+        }
+        /*
+         * Recorded before the caller sees the answer, hence before it
+         * can change cipherSuites.
+         */
+        return probe.thenApply(serverHello -> {
+            cache.record(version, cipherSuites, helloOnly, serverHello);
+            return serverHello;
+        });
+    }
+
+    /**
+     * Asynchronous TestSSLServer.connectV2().
+     */
+    public CompletableFuture<ServerHelloSSLv2> connectV2(InetSocketAddress isa) {
+        return connectV2(isa, Deadline.NONE);
+    }
+
+    CompletableFuture<ServerHelloSSLv2> connectV2(InetSocketAddress isa, Deadline deadline) {
+        return submit(() -> new Probe<>(isa, 0x0200, ScanEvents.SSL2_OFFERED, false,
+                ByteBuffer.wrap(SSL2_CLIENT_HELLO), new ServerHelloSSLv2Decoder(), deadline), 0);
+    }
+
+    /**
+     * Asynchronous TestSSLServer.supportedSuites(): each elimination
+     * step is chained on the previous one, without holding a thread.
+     */
+    public CompletableFuture<SuiteSet> supportedSuites(InetSocketAddress isa, int version,
+                                                       SuiteSet candidates,
+                                                       Set<String> serverCertID) {
+        ScanReport report = new ScanReport(isa, new ScanListener() {
+            @Override
+            public void certificate(InetSocketAddress isa, String certID) {
+                serverCertID.add(certID);
+            }
+        });
+        return supportedSuites(isa, version, candidates, report, Deadline.NONE, null);
+    }
+
+    CompletableFuture<SuiteSet> supportedSuites(InetSocketAddress isa, int version,
+                                                SuiteSet candidates, ScanReport report,
+                                                Deadline deadline, ProbeCache cache) {
+        return eliminate(isa, version, new SuiteSet(candidates), new SuiteSet(), report, deadline, cache);
+    }
+
+    private CompletableFuture<SuiteSet> eliminate(InetSocketAddress isa, int version, SuiteSet cs,
+                                                  SuiteSet rs, ScanReport report,
+                                                  Deadline deadline, ProbeCache cache) {
+        return connect(isa, version, cs, helloOnly, deadline, cache).thenCompose(sh -> {
+            if (sh == null) {
+                return CompletableFuture.completedFuture(rs);
+            }
+            if (!cs.contains(sh.cipherSuite)) {
+                System.err.printf("[ERR: server wants to use"
+                        + " cipher suite 0x%04X which client"
+                        + " did not announce]", sh.cipherSuite);
+                System.err.println();
+                return CompletableFuture.completedFuture(rs);
+            }
+            cs.remove(sh.cipherSuite);
+            rs.add(sh.cipherSuite);
+            report.addSuite(version, sh.cipherSuite);
+            if (sh.serverCertName != null) {
+                report.addCertificate(sh.serverCertHash + ": " + sh.serverCertName);
+            }
+            return eliminate(isa, version, cs, rs, report, deadline, cache);
+        });
+    }
+
+    /**
+     * Full scan of one server, with the same phases as ScanEngine,
+     * within deadlineMillis (0 for no deadline).
+     */
+    public CompletableFuture<ScanReport> scan(InetSocketAddress isa, int chunks, long deadlineMillis) {
+        return scan(isa, chunks, deadlineMillis, false, false, ScanListener.NONE);
+    }
+
+    /**
+     * Same as above; in speculative mode, the versions above the lowest
+     * one are checked against its suites before being enumerated. With
+     * order, the server's preference order of each version is recovered.
+     */
+    public CompletableFuture<ScanReport> scan(InetSocketAddress isa, int chunks, long deadlineMillis,
+                                              boolean speculative, boolean order) {
+        return scan(isa, chunks, deadlineMillis, speculative, order, ScanListener.NONE);
+    }
+
+    /**
+     * Same as above; the listener is told of the versions, suites and
+     * certificates as they are found.
+     */
+    CompletableFuture<ScanReport> scan(InetSocketAddress isa, int chunks, long deadlineMillis,
+                                       boolean speculative, boolean order, ScanListener listener) {
+        ScanReport report = new ScanReport(isa, listener);
+        Deadline deadline = Deadline.after(deadlineMillis);
+        ProbeCache cache = new ProbeCache();
+        ScanEvents.Phase detection = ScanEvents.beginPhase(ScanEvents.VERSION_DETECTION, isa, 0, 1);
+        List<CompletableFuture<ServerHello>> versionProbes = new ArrayList<>();
+        for (int v = 0x0300; v <= 0x0303; v++) {
+            versionProbes.add(connect(isa, v, ALL_SUITES, false, deadline, cache));
+        }
+        CompletableFuture<ServerHelloSSLv2> v2Probe = connectV2(isa, deadline);
+
+        return allOf(versionProbes).thenCombine(v2Probe, (serverHellos, serverHelloSSLv2) -> {
+            detection.done();
+            for (ServerHello serverHello : serverHellos) {
+                if (serverHello == null) {
+                    continue;
+                }
+                report.addVersion(serverHello.protocolVersion);
+                if (serverHello.serverCertName != null) {
+                    report.addCertificate(serverHello.serverCertHash + ": " + serverHello.serverCertName);
+                }
+                if (serverHello.compression == 1) {
+                    report.compress = true;
+                }
+            }
+            if (serverHelloSSLv2 != null) {
+                report.addVersion(0x0200);
+                Set<Integer> vc2 = new TreeSet<>();
+                for (int cipherSuite : serverHelloSSLv2.cipherSuites) {
+                    vc2.add(cipherSuite);
+                    report.addSuite(0x0200, cipherSuite);
+                }
+                report.supportedCipherSuitesV2 = vc2;
+                if (serverHelloSSLv2.serverCertName != null) {
+                    report.addCertificate(serverHelloSSLv2.serverCertHash + ": " + serverHelloSSLv2.serverCertName);
+                }
+            }
+            return report;
+        }).thenCompose(r -> {
+            Map<Integer, CompletableFuture<SuiteSet>> enumerations = new TreeMap<>();
+            CompletableFuture<SuiteSet> baseSuites = null;
+            for (int version : r.protocolVersions) {
+                if (version == 0x0200) {
+                    continue;
+                }
+                if (!speculative) {
+                    enumerations.put(version, enumerate(isa, version, chunks, r, deadline, cache));
+                } else if (baseSuites == null) {
+                    baseSuites = enumerate(isa, version, chunks, r, deadline, cache);
+                    enumerations.put(version, baseSuites);
+                } else {
+                    enumerations.put(version, baseSuites.thenCompose(base -> confirm(isa, version, base,
+                            r, deadline, cache).thenCompose(same -> {
+                        if (same) {
+                            r.addInferred(version, base);
+                            return CompletableFuture.completedFuture(new SuiteSet(base));
+                        }
+                        return enumerate(isa, version, chunks, r, deadline, cache);
+                    })));
+                }
+            }
+            List<CompletableFuture<Boolean>> beastTests = new ArrayList<>();
+            for (Map.Entry<Integer, CompletableFuture<SuiteSet>> e : enumerations.entrySet()) {
+                int version = e.getKey();
+                beastTests.add(e.getValue().thenCompose(vsc -> {
+                    r.supportedCipherSuites.put(version, vsc);
+                    CompletableFuture<Boolean> beast = testBEAST(isa, version, vsc, deadline, cache);
+                    if (!order) {
+                        return beast;
+                    }
+                    ScanEvents.Phase ordering = ScanEvents.beginPhase(ScanEvents.PREFERENCE_ORDER, isa, version, 1);
+                    return PreferenceOrder.detect(vsc, offered -> connect(isa, version, offered, helloOnly,
+                            deadline, cache).thenApply(PreferenceOrder::choice))
+                            .thenAccept(preferenceOrder -> {
+                                ordering.done();
+                                r.preferenceOrders.put(version, preferenceOrder);
+                            })
+                            .thenCombine(beast, (v, vulnerable) -> vulnerable);
+                }));
+            }
+            return allOf(beastTests).thenApply(results -> {
+                r.vulnBEAST = results.contains(Boolean.TRUE);
+                r.incomplete = deadline.wasReached();
+                r.connectionsSaved = cache.saved();
+                return r;
+            });
+        });
+    }
+
+    /**
+     * Chunked enumeration of one version, after the suites resumed from
+     * an earlier scan and the elimination step answered by the version
+     * probe.
+     */
+    private CompletableFuture<SuiteSet> enumerate(InetSocketAddress isa, int version, int chunks,
+                                                  ScanReport r, Deadline deadline, ProbeCache cache) {
+        List<CompletableFuture<SuiteSet>> parts = new ArrayList<>();
+        SuiteSet candidates = new SuiteSet(ALL_SUITES);
+        parts.add(CompletableFuture.completedFuture(r.resume(version, candidates)));
+        parts.add(CompletableFuture.completedFuture(
+                replayCached(cache, version, candidates, helloOnly, r)));
+        List<SuiteSet> split = splitSuites(candidates, chunks);
+        ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.ENUMERATION, isa, version, split.size());
+        for (SuiteSet chunk : split) {
+            parts.add(supportedSuites(isa, version, chunk, r, deadline, cache)
+                    .whenComplete((part, failure) -> phase.done()));
+        }
+        return allOf(parts).thenApply(results -> {
+            SuiteSet vsc = new SuiteSet();
+            for (SuiteSet part : results) {
+                vsc.or(part);
+            }
+            return vsc;
+        });
+    }
+
+    /**
+     * Asynchronous check of the hypothesis that the server supports the
+     * same suites at this version as base (see ScanEngine).
+     */
+    private CompletableFuture<Boolean> confirm(InetSocketAddress isa, int version, SuiteSet base,
+                                               ScanReport report, Deadline deadline, ProbeCache cache) {
+        ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.SPECULATIVE_CHECK, isa, version, 1);
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+        SuiteSet refusal = refusalProbe(base);
+        if (refusal != null) {
+            checks.add(connect(isa, version, refusal, helloOnly, deadline, cache)
+                    .thenApply(sh -> confirms(sh, refusal, true, report)));
+        }
+        for (SuiteSet confirmation : confirmationProbes(base)) {
+            checks.add(connect(isa, version, confirmation, helloOnly, deadline, cache)
+                    .thenApply(sh -> confirms(sh, confirmation, false, report)));
+        }
+        return allOf(checks).thenApply(results -> {
+            phase.done();
+            return !results.contains(Boolean.FALSE);
+        });
+    }
+
+    /**
+     * Asynchronous TestSSLServer.testBEAST().
+     */
+    private CompletableFuture<Boolean> testBEAST(InetSocketAddress isa, int version, SuiteSet supp,
+                                                 Deadline deadline, ProbeCache cache) {
+        if (version < 0x0300 || version > 0x0301) {
+            return CompletableFuture.completedFuture(false);
+        }
+        SuiteSet strongCBC = strongSuites(supp, true);
+        SuiteSet strongStream = strongSuites(supp, false);
+        if (strongCBC.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (strongStream.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        SuiteSet ns = new SuiteSet(strongCBC);
+        ns.or(strongStream);
+        ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.BEAST_TEST, isa, version, 1);
+        return connect(isa, version, ns, helloOnly, deadline, cache).thenApply(sh -> {
+            phase.done();
+            return sh != null && !strongStream.contains(sh.cipherSuite);
+        });
+    }
+
+    private static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<T> results = new ArrayList<>();
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<Probe<T>> factory, int attempt) {
+        Exception failure = stopped;
+        if (failure != null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(failure);
+            return failed;
+        }
+        Probe<T> probe = factory.get();
+        probe.attempt = attempt;
+        submitted.add(probe);
+        if (stopped != null) {
+            // the loop stopped in between, and may have drained the queue already
+            failSubmitted(stopped);
+        } else {
+            selector.wakeup();
+        }
+        if (throttle == null) {
+            return probe.result;
+        }
+        return probe.result.thenCompose(value -> {
+            if (value != null || !probe.congested || attempt == TargetThrottle.RETRIES
+                    || probe.deadline.isReached() || closed) {
+                return CompletableFuture.completedFuture(value);
+            }
+            throttle.retried();
+            return submit(factory, attempt + 1);
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        Exception failure = new IllegalStateException("engine is closed");
+        try {
+            while (!closed) {
+                Probe<?> probe;
+                while ((probe = submitted.poll()) != null) {
+                    waiting.add(probe);
+                }
+                if (throttle == null) {
+                    while (inFlight < maxInFlight && (probe = waiting.poll()) != null) {
+                        start(probe);
+                    }
+                } else {
+                    startThrottled();
+                }
+                selector.select(nextTimeout());
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key, (Probe<?>) key.attachment());
+                }
+                expire();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("probe engine failure: " + e);
+            failure = e;
+        } finally {
+            stopped = failure;
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                Probe<?> probe = (Probe<?>) key.attachment();
+                probe.outcome = ScanEvents.ERROR;
+                probe.finish(null, failure);
+            }
+            Probe<?> probe;
+            while ((probe = waiting.poll()) != null) {
+                probe.result.completeExceptionally(failure);
+            }
+            failSubmitted(failure);
+            try {
+                selector.close();
+            } catch (IOException ioe) {
+                // ignored
+            }
+        }
+    }
+
+    /**
+     * Fail the probes submitted to the stopped loop. Each probe is taken
+     * from the queue by one caller only, hence completed once.
+     */
+    private void failSubmitted(Exception failure) {
+        Probe<?> probe;
+        while ((probe = submitted.poll()) != null) {
+            probe.result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Start the waiting probes which their target and subnet allow now,
+     * in submission order; the others keep their place.
+     */
+    private void startThrottled() {
+        long now = System.nanoTime();
+        Iterator<Probe<?>> it = waiting.iterator();
+        while (inFlight < maxInFlight && it.hasNext()) {
+            Probe<?> probe = it.next();
+            if (!probe.deadline.isReached()) {
+                probe.permit = throttle.tryAcquire(probe.isa, now);
+                if (probe.permit == null) {
+                    continue;
+                }
+            }
+            it.remove();
+            start(probe);
+        }
+    }
+
+    /**
+     * Milliseconds until the earliest probe timeout, 0 if none (which
+     * makes select() wait indefinitely). Throttled probes which wait
+     * for a token are looked at again every THROTTLE_POLL_MILLIS.
+     */
+    private long nextTimeout() {
+        long next = Long.MAX_VALUE;
+        if (throttle != null && !waiting.isEmpty()) {
+            next = System.nanoTime() + THROTTLE_POLL_MILLIS * 1000000L;
+        }
+        for (SelectionKey key : selector.keys()) {
+            long expiresAt = ((Probe<?>) key.attachment()).expiresAt;
+            if (key.isValid() && expiresAt != 0) {
+                next = Math.min(next, expiresAt);
+            }
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, (next - System.nanoTime() + 999999) / 1000000);
+    }
+
+    private void expire() {
+        long now = System.nanoTime();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            Probe<?> probe = (Probe<?>) key.attachment();
+            if (key.isValid() && probe.expiresAt != 0 && now - probe.expiresAt >= 0) {
+                SocketTimeoutException timeout;
+                if ((key.interestOps() & SelectionKey.OP_CONNECT) != 0) {
+                    timeout = new SocketTimeoutException("connect timed out");
+                    ScanMetrics.INSTANCE.connectFailed(true);
+                    probe.outcome = ScanEvents.CONNECT_TIMEOUT;
+                    if (!probe.deadline.isReached()) {
+                        System.err.println("could not connect to " + probe.isa + ": " + timeout.getMessage());
+                    }
+                } else {
+                    timeout = new SocketTimeoutException("read timed out");
+                    ScanMetrics.INSTANCE.exchangeFailed(true);
+                    probe.outcome = ScanEvents.READ_TIMEOUT;
+                }
+                if (probe.deadline.isReached()) {
+                    probe.deadline.markReached();
+                }
+                probe.congested = true;
+                probe.finish(null);
+            }
+        }
+    }
+
+    private void start(Probe<?> probe) {
+        inFlight++;
+        if (probe.deadline.isReached()) {
+            probe.deadline.markReached();
+            probe.finish(null);
+            return;
+        }
+        probe.setTimeout(connectTimeout);
+        probe.event = ScanEvents.beginProbe();
+        probe.startedAt = System.nanoTime();
+        try {
+            probe.channel = connections.openChannel(probe.isa);
+            if (probe.channel.isConnected()) {
+                ScanMetrics.INSTANCE.connected(System.nanoTime() - probe.startedAt);
+                probe.setTimeout(readTimeout);
+                probe.key = probe.channel.register(selector, SelectionKey.OP_WRITE, probe);
+            } else {
+                probe.key = probe.channel.register(selector, SelectionKey.OP_CONNECT, probe);
+            }
+        } catch (IOException ioe) {
+            ScanMetrics.INSTANCE.connectFailed(false);
+            probe.outcome = ScanEvents.CONNECT_FAILED;
+            System.err.println("could not connect to " + probe.isa + ": " + ioe.toString());
+            probe.congested = TargetThrottle.isCongestion(ioe, false, probe.acceptedOffer);
+            probe.finish(null);
+        }
+    }
+
+    private void handle(SelectionKey key, Probe<?> probe) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isConnectable()) {
+            try {
+                probe.channel.finishConnect();
+            } catch (IOException ioe) {
+                ScanMetrics.INSTANCE.connectFailed(ioe instanceof SocketTimeoutException);
+                probe.outcome = ScanEvents.outcome(false, ioe);
+                System.err.println("could not connect to " + probe.isa + ": " + ioe.toString());
+                probe.congested = TargetThrottle.isCongestion(ioe, false, probe.acceptedOffer);
+                probe.finish(null);
+                return;
+            }
+            ScanMetrics.INSTANCE.connected(System.nanoTime() - probe.startedAt);
+            key.interestOps(SelectionKey.OP_WRITE);
+            probe.setTimeout(readTimeout);
+            return;
+        }
+        try {
+            if (key.isWritable()) {
+                ScanMetrics.INSTANCE.bytesSent.addAndGet(probe.channel.write(probe.hello));
+                if (!probe.hello.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                readBuffer.clear();
+                int n = probe.channel.read(readBuffer);
+                if (n < 0) {
+                    ScanMetrics.INSTANCE.refused();
+                    probe.outcome = ScanEvents.REFUSED;
+                    probe.finish(null);
+                    return;
+                }
+                ScanMetrics.INSTANCE.bytesReceived.addAndGet(n);
+                readBuffer.flip();
+                if (probe.decoder.feed(readBuffer)) {
+                    probe.complete();
+                }
+            }
+        } catch (IOException ioe) {
+            if (TargetThrottle.isRefusal(ioe, probe.acceptedOffer)) {
+                ScanMetrics.INSTANCE.refused();
+                probe.outcome = ScanEvents.REFUSED;
+            } else {
+                ScanMetrics.INSTANCE.exchangeFailed(ioe);
+                probe.outcome = ScanEvents.outcome(true, ioe);
+            }
+            probe.congested = TargetThrottle.isCongestion(ioe, true, probe.acceptedOffer);
+            probe.finish(null);
+        }
+    }
+
+    /*
+     * One connection in flight: its hello message, the decoder of
+     * the answer, and the future to complete.
+     */
+    private final class Probe<T> {
+        final InetSocketAddress isa;
+        final int version;
+        final int offered;
+        final boolean acceptedOffer;
+        final ByteBuffer hello;
+        final ResponseDecoder<T> decoder;
+        final Deadline deadline;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        SocketChannel channel;
+        SelectionKey key;
+        TargetThrottle.Permit permit;
+        long expiresAt;
+        long startedAt;
+        int attempt;
+        Object event;
+        String outcome;
+        boolean congested;
+        boolean done;
+
+        Probe(InetSocketAddress isa, int version, int offered, boolean acceptedOffer, ByteBuffer hello,
+              ResponseDecoder<T> decoder, Deadline deadline) {
+            this.isa = isa;
+            this.version = version;
+            this.offered = offered;
+            this.acceptedOffer = acceptedOffer;
+            this.hello = hello;
+            this.decoder = decoder;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Arm the timeout of the current step (connect, then exchange),
+         * clipped to the scan deadline.
+         */
+        void setTimeout(int timeout) {
+            int t = deadline.clip(timeout);
+            expiresAt = t == 0 ? 0 : System.nanoTime() + t * 1000000L;
+        }
+
+        void complete() {
+            T value;
+            try {
+                value = decoder.decode();
+            } catch (IOException ioe) {
+                ScanMetrics.INSTANCE.exchangeFailed(ioe);
+                outcome = ScanEvents.outcome(true, ioe);
+                value = null;
+            }
+            finish(value);
+        }
+
+        void finish(T value) {
+            finish(value, null);
+        }
+
+        /**
+         * Release the probe, and complete its future with the value, or
+         * with the failure when not null.
+         */
+        void finish(T value, Exception failure) {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (key != null) {
+                key.cancel();
+            }
+            if (channel != null) {
+                connections.close(channel);
+            }
+            decoder.release();
+            if (startedAt != 0) {
+                ScanMetrics.INSTANCE.probed(isa, version == 0x0200 ? ScanMetrics.SSL2 : ScanMetrics.TLS,
+                        System.nanoTime() - startedAt);
+                ScanEvents.endProbe(event, isa, version, offered, attempt,
+                        value instanceof ServerHello ? ((ServerHello) value).cipherSuite : -1,
+                        outcome != null ? outcome : value != null ? ScanEvents.ACCEPTED : ScanEvents.ERROR);
+            }
+            inFlight--;
+            if (value instanceof ServerHello && throttle != null) {
+                throttle.accepted(isa, version, ((ServerHello) value).cipherSuite);
+            }
+            if (permit != null) {
+                throttle.release(permit, congested && !deadline.isReached());
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+}
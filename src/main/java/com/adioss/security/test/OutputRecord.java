@@ -13,7 +13,7 @@ import static com.adioss.security.test.Utils.enc16be;
 public class OutputRecord extends OutputStream {
 
     private OutputStream out;
-    private byte[] buffer = new byte[Constants.MAX_RECORD_LEN + 5];
+    private byte[] buffer = BufferPool.acquire();
     private int ptr;
     private int version;
     private int type;
@@ -41,6 +41,15 @@ public class OutputRecord extends OutputStream {
         ptr = 5;
     }
 
+    /**
+     * Return the buffer to the pool; pending data is discarded and the
+     * underlying stream is not closed.
+     */
+    public void close() {
+        BufferPool.release(buffer);
+        buffer = null;
+    }
+
     public void write(int b)
             throws IOException {
         buffer[ptr++] = (byte) b;
@@ -0,0 +1,123 @@
+package com.adioss.security.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The order in which a server prefers the cipher suites it supports at
+ * one version. The server is used as a comparison oracle: offered two
+ * suites, it picks the one it prefers. A merge sort needs O(n log n)
+ * such probes; both halves of each sort are sorted concurrently, so the
+ * probes of independent merges are in flight at the same time.
+ *
+ * Two probes come first, offering all the suites in ascending then in
+ * descending order: a server which picks the first offered suite both
+ * times follows the client's order, and has no order of its own.
+ */
+final class PreferenceOrder {
+    /*
+     * One probe: the suite the server chooses among the offered ones,
+     * in the offered order; -1 if the probe failed.
+     */
+    interface Oracle {
+        CompletableFuture<Integer> choose(List<Integer> offered);
+    }
+
+    final int[] suites;
+    final boolean followsClient;
+    final boolean complete;
+    final int probes;
+
+    private PreferenceOrder(int[] suites, boolean followsClient, boolean complete, int probes) {
+        this.suites = suites;
+        this.followsClient = followsClient;
+        this.complete = complete;
+        this.probes = probes;
+    }
+
+    /**
+     * The answer of a probe, for an Oracle.
+     */
+    static int choice(ServerHello serverHello) {
+        return serverHello == null ? -1 : serverHello.cipherSuite;
+    }
+
+    /**
+     * Sort the supported suites, most preferred first. When the server
+     * follows the client's order, or when a probe failed (complete is
+     * false), the order is not significant.
+     */
+    static CompletableFuture<PreferenceOrder> detect(SuiteSet supported, Oracle oracle) {
+        int[] ascending = supported.toIntArray();
+        if (ascending.length < 2) {
+            return CompletableFuture.completedFuture(new PreferenceOrder(ascending, false, true, 0));
+        }
+        AtomicInteger probes = new AtomicInteger();
+        Oracle counted = offered -> {
+            probes.incrementAndGet();
+            return oracle.choose(offered);
+        };
+        List<Integer> asc = new ArrayList<>();
+        for (int suite : ascending) {
+            asc.add(suite);
+        }
+        List<Integer> desc = new ArrayList<>(asc);
+        Collections.reverse(desc);
+        return counted.choose(asc).thenCombine(counted.choose(desc), (first, last) -> new int[]{first, last})
+                .thenCompose(choices -> {
+                    if (choices[0] < 0 || choices[1] < 0) {
+                        return CompletableFuture.completedFuture(
+                                new PreferenceOrder(ascending, false, false, probes.get()));
+                    }
+                    if (choices[0] == asc.get(0) && choices[1] == desc.get(0)) {
+                        return CompletableFuture.completedFuture(
+                                new PreferenceOrder(ascending, true, true, probes.get()));
+                    }
+                    AtomicBoolean failed = new AtomicBoolean();
+                    return sort(ascending, 0, ascending.length, counted, failed).thenApply(sorted ->
+                            new PreferenceOrder(sorted, false, !failed.get(), probes.get()));
+                });
+    }
+
+    private static CompletableFuture<int[]> sort(int[] suites, int from, int to, Oracle oracle,
+                                                 AtomicBoolean failed) {
+        if (to - from == 1) {
+            return CompletableFuture.completedFuture(new int[]{suites[from]});
+        }
+        int mid = (from + to) >>> 1;
+        CompletableFuture<int[]> left = sort(suites, from, mid, oracle, failed);
+        CompletableFuture<int[]> right = sort(suites, mid, to, oracle, failed);
+        return left.thenCombine(right, (l, r) -> new int[][]{l, r})
+                .thenCompose(halves -> merge(halves[0], 0, halves[1], 0,
+                        new int[halves[0].length + halves[1].length], oracle, failed));
+    }
+
+    /**
+     * Merge l[i..] and r[j..] into out, one comparison probe per step.
+     * If a probe fails, the suite of the left half goes first.
+     */
+    private static CompletableFuture<int[]> merge(int[] l, int i, int[] r, int j, int[] out, Oracle oracle,
+                                                  AtomicBoolean failed) {
+        if (i == l.length || j == r.length) {
+            System.arraycopy(l, i, out, i + j, l.length - i);
+            System.arraycopy(r, j, out, i + j, r.length - j);
+            return CompletableFuture.completedFuture(out);
+        }
+        return oracle.choose(Arrays.asList(l[i], r[j])).thenCompose(choice -> {
+            if (choice == r[j]) {
+                out[i + j] = r[j];
+                return merge(l, i, r, j + 1, out, oracle, failed);
+            }
+            if (choice != l[i]) {
+                failed.set(true);
+            }
+            out[i + j] = l[i];
+            return merge(l, i + 1, r, j, out, oracle, failed);
+        });
+    }
+}
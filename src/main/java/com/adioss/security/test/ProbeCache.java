@@ -0,0 +1,93 @@
+package com.adioss.security.test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The ServerHello answers received during one scan, keyed by the hello
+ * which was sent: protocol version and cipher suites, in the order in
+ * which they were offered. Sending the same hello again would get the
+ * same answer, so the probe is answered from here instead. This happens
+ * at least once per version: the version probes offer all the suites,
+ * which is also the first step of the elimination.
+ *
+ * Only answers are recorded, failures are retried. An answer decoded in
+ * hello-only mode (without the certificate) does not stand for a full
+ * probe.
+ */
+class ProbeCache {
+    private final Map<Key, Answer> answers = new ConcurrentHashMap<>();
+    private final AtomicInteger saved = new AtomicInteger();
+
+    /**
+     * The recorded answer to this hello, or null if it must be sent.
+     */
+    ServerHello lookup(int version, Collection<Integer> cipherSuites, boolean helloOnly) {
+        Answer answer = answers.get(new Key(version, cipherSuites));
+        if (answer == null || (answer.helloOnly && !helloOnly)) {
+            return null;
+        }
+        saved.incrementAndGet();
+        return answer.serverHello;
+    }
+
+    void record(int version, Collection<Integer> cipherSuites, boolean helloOnly, ServerHello serverHello) {
+        if (serverHello != null) {
+            answers.merge(new Key(version, cipherSuites), new Answer(serverHello, helloOnly),
+                    (old, fresh) -> old.helloOnly ? fresh : old);
+        }
+    }
+
+    /**
+     * Connections which were not made thanks to the cache.
+     */
+    int saved() {
+        return saved.get();
+    }
+
+    private static final class Answer {
+        final ServerHello serverHello;
+        final boolean helloOnly;
+
+        Answer(ServerHello serverHello, boolean helloOnly) {
+            this.serverHello = serverHello;
+            this.helloOnly = helloOnly;
+        }
+    }
+
+    private static final class Key {
+        private final int version;
+        private final int[] suites;
+        private final int hash;
+
+        Key(int version, Collection<Integer> cipherSuites) {
+            this.version = version;
+            if (cipherSuites instanceof SuiteSet) {
+                this.suites = ((SuiteSet) cipherSuites).toIntArray();
+            } else {
+                this.suites = new int[cipherSuites.size()];
+                int i = 0;
+                for (int suite : cipherSuites) {
+                    this.suites[i++] = suite;
+                }
+            }
+            this.hash = 31 * version + Arrays.hashCode(suites);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return hash == k.hash && version == k.version && Arrays.equals(suites, k.suites);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.adioss.security.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+
+import static com.adioss.security.test.Constants.SSL2_CLIENT_HELLO;
+
+/*
+ * Performs single probes (one connection, one hello message, one
+ * decoded answer) with the configured connect and read timeouts, and
+ * within the deadline of the current scan. A timeout is handled like
+ * any other failure: the probe yields null.
+ *
+ * In hello-only mode, probes close the connection as soon as the
+ * ServerHello is decoded, without downloading and parsing the
+ * certificate; the scan then fetches the certificate once per version.
+ *
+ * With a TargetThrottle, each probe first waits for a permit of its
+ * target, and a probe which failed on a congestion signal is retried.
+ * Connections are opened by a Transport, TCP by default.
+ *
+ * Each connection attempt is recorded in ScanMetrics.INSTANCE, and
+ * as a ScanEvents probe event.
+ */
+public class Prober {
+    static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    static final int DEFAULT_READ_TIMEOUT = 10000;
+
+    final int connectTimeout;
+    final int readTimeout;
+    final boolean helloOnly;
+    final Deadline deadline;
+    final ProbeCache cache;
+    final TargetThrottle throttle;
+    final Transport transport;
+
+    /**
+     * Timeouts are in milliseconds; 0 means no timeout.
+     */
+    public Prober(int connectTimeout, int readTimeout, boolean helloOnly) {
+        this(connectTimeout, readTimeout, helloOnly, Deadline.NONE, null, null, ConnectionFactory.DEFAULT);
+    }
+
+    private Prober(int connectTimeout, int readTimeout, boolean helloOnly, Deadline deadline,
+                   ProbeCache cache, TargetThrottle throttle, Transport transport) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.helloOnly = helloOnly;
+        this.deadline = deadline;
+        this.cache = cache;
+        this.throttle = throttle;
+        this.transport = transport;
+    }
+
+    /**
+     * The same prober, bound to the deadline of one scan, and recording
+     * its answers in a new probe cache.
+     */
+    Prober withDeadline(Deadline deadline) {
+        return new Prober(connectTimeout, readTimeout, helloOnly, deadline, new ProbeCache(), throttle,
+                transport);
+    }
+
+    /**
+     * The same prober, with its probes going through the throttle.
+     */
+    Prober withThrottle(TargetThrottle throttle) {
+        return new Prober(connectTimeout, readTimeout, helloOnly, deadline, cache, throttle, transport);
+    }
+
+    /**
+     * The same prober, opening its connections with the given
+     * transport.
+     */
+    Prober withTransport(Transport transport) {
+        return new Prober(connectTimeout, readTimeout, helloOnly, deadline, cache, throttle, transport);
+    }
+
+    /**
+     * Connect to the server, send a ClientHello, and decode the
+     * response (ServerHello). On error, null is returned. Within a
+     * scan, a hello which was already answered is not sent again.
+     */
+    ServerHello connect(InetSocketAddress isa, int version, Collection<Integer> cipherSuites) {
+        return connect(isa, version, cipherSuites, helloOnly);
+    }
+
+    /**
+     * Same as above, with an explicit hello-only mode (false to get
+     * the certificate whatever the configured mode).
+     */
+    ServerHello connect(InetSocketAddress isa, int version, Collection<Integer> cipherSuites,
+                        boolean helloOnly) {
+        if (cache != null) {
+            ServerHello serverHello = cache.lookup(version, cipherSuites, helloOnly);
+            if (serverHello != null) {
+                return serverHello;
+            }
+        }
+        boolean acceptedOffer = throttle != null && throttle.isAcceptedOffer(isa, version, cipherSuites);
+        ServerHello serverHello = probe(isa, version, cipherSuites.size(), acceptedOffer, connection -> {
+            ClientHelloTemplate.send(connection.getOutputStream(), version, cipherSuites);
+            return new ServerHello(connection.getInputStream(), helloOnly, isa, version);
+        });
+        if (cache != null) {
+            cache.record(version, cipherSuites, helloOnly, serverHello);
+        }
+        return serverHello;
+    }
+
+    /**
+     * Connect to the server, send a SSLv2 CLIENT HELLO, and decode
+     * the response (SERVER HELLO). On error, null is returned.
+     */
+    ServerHelloSSLv2 connectV2(InetSocketAddress isa) {
+        return probe(isa, 0x0200, ScanEvents.SSL2_OFFERED, false, connection -> {
+            connection.getOutputStream().write(SSL2_CLIENT_HELLO);
+            return new ServerHelloSSLv2(connection.getInputStream());
+        });
+    }
+
+    /*
+     * The exchange of one probe over its connection.
+     */
+    private interface Exchange<T> {
+        T run(Transport.Connection connection) throws IOException;
+    }
+
+    /**
+     * Run the exchange over a new connection, retried after a congestion
+     * signal; acceptedOffer tells that the hello offers a suite which
+     * the target already chose, so that a reset answering it is not a
+     * refusal.
+     */
+    private <T> T probe(InetSocketAddress isa, int version, int offered, boolean acceptedOffer,
+                        Exchange<T> exchange) {
+        int kind = version == 0x0200 ? ScanMetrics.SSL2 : ScanMetrics.TLS;
+        for (int attempt = 0; ; attempt++) {
+            TargetThrottle.Permit permit = null;
+            if (throttle != null) {
+                permit = throttle.acquire(isa, deadline);
+                if (permit == null) {
+                    if (deadline.isReached()) {
+                        deadline.markReached();
+                    }
+                    return null;
+                }
+            }
+            if (deadline.isReached()) {
+                deadline.markReached();
+                if (permit != null) {
+                    throttle.release(permit, false);
+                }
+                return null;
+            }
+            boolean congested = false;
+            boolean refused = false;
+            Object event = ScanEvents.beginProbe();
+            long start = System.nanoTime();
+            T answer = null;
+            IOException failure = null;
+            Transport.Connection connection = null;
+            try {
+                connection = transport.connect(isa, deadline.clip(connectTimeout), deadline.clip(readTimeout));
+                ScanMetrics.INSTANCE.connected(System.nanoTime() - start);
+                answer = exchange.run(ScanMetrics.INSTANCE.counting(connection));
+                return answer;
+            } catch (IOException ioe) {
+                failure = ioe;
+                congested = TargetThrottle.isCongestion(ioe, connection != null, acceptedOffer);
+                if (connection == null) {
+                    ScanMetrics.INSTANCE.connectFailed(ioe instanceof SocketTimeoutException);
+                    if (deadline.isReached()) {
+                        deadline.markReached();
+                    } else {
+                        System.err.println("could not connect to " + isa + ": " + ioe.toString());
+                    }
+                } else {
+                    refused = TargetThrottle.isRefusal(ioe, acceptedOffer);
+                    if (refused) {
+                        ScanMetrics.INSTANCE.refused();
+                    } else {
+                        ScanMetrics.INSTANCE.exchangeFailed(ioe);
+                    }
+                    if (deadline.isReached()) {
+                        deadline.markReached();
+                    }
+                }
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+                ScanMetrics.INSTANCE.probed(isa, kind, System.nanoTime() - start);
+                ScanEvents.endProbe(event, isa, version, offered, attempt,
+                        answer instanceof ServerHello ? ((ServerHello) answer).cipherSuite : -1,
+                        refused ? ScanEvents.REFUSED : ScanEvents.outcome(connection != null, failure));
+                if (answer instanceof ServerHello && throttle != null) {
+                    throttle.accepted(isa, version, ((ServerHello) answer).cipherSuite);
+                }
+                if (permit != null) {
+                    throttle.release(permit, congested && !deadline.isReached());
+                }
+            }
+            if (throttle == null || !congested || attempt == TargetThrottle.RETRIES || deadline.isReached()) {
+                return null;
+            }
+            throttle.retried();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.adioss.security.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Incremental decoder for the answer of a server to one of our hello
+ * messages, used when bytes arrive piecewise from a non-blocking
+ * channel. The decoder only tracks the framing; once the answer is
+ * complete, the buffered bytes are handed over to the usual parser.
+ */
+interface ResponseDecoder<T> {
+
+    /**
+     * Append the received bytes. Returns true once enough bytes were
+     * received to decode the answer.
+     */
+    boolean feed(ByteBuffer src) throws IOException;
+
+    T decode() throws IOException;
+
+    /**
+     * Give the buffers back to the BufferPool, once the answer was
+     * decoded or the probe abandoned.
+     */
+    void release();
+}
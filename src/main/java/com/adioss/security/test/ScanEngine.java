@@ -0,0 +1,294 @@
+package com.adioss.security.test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.adioss.security.test.CipherSuiteUnion.ALL_SUITES;
+import static com.adioss.security.test.TestSSLServer.*;
+
+/*
+ * Runs the independent phases of a server scan concurrently: the
+ * SSLv3/TLS version probes, the SSLv2 probe, the cipher suite
+ * enumeration of each version and the BEAST tests. The enumeration
+ * of a version is itself split into disjoint chunks of candidate
+ * suites, each eliminated on its own connections. Probes are
+ * submitted to the (bounded) executor from the calling thread, or
+ * chained on the completion of earlier probes (preference order), so
+ * a task never waits on another one and the pool cannot deadlock.
+ */
+public class ScanEngine {
+    private final ExecutorService executor;
+    private final Prober prober;
+    private final int chunks;
+    private final long deadlineMillis;
+    private final boolean speculative;
+    private final boolean order;
+    private final ScanListener listener;
+
+    /**
+     * deadlineMillis is the time budget of each scan (0 for none): once
+     * it is over, the remaining probes give up and the report returned
+     * so far is marked incomplete.
+     */
+    public ScanEngine(ExecutorService executor, Prober prober, int chunks, long deadlineMillis) {
+        this(executor, prober, chunks, deadlineMillis, false, false);
+    }
+
+    /**
+     * In speculative mode, only the lowest SSLv3/TLS version is fully
+     * enumerated; the others are first checked against its suites with
+     * TestSSLServer.confirmationProbes(), and enumerated only if that
+     * check fails. With order, the server's preference order is also
+     * recovered for each version (see PreferenceOrder).
+     */
+    public ScanEngine(ExecutorService executor, Prober prober, int chunks, long deadlineMillis,
+                      boolean speculative, boolean order) {
+        this(executor, prober, chunks, deadlineMillis, speculative, order, ScanListener.NONE);
+    }
+
+    /**
+     * The listener is told of the versions, suites and certificates of
+     * each scan as they are found.
+     */
+    ScanEngine(ExecutorService executor, Prober prober, int chunks, long deadlineMillis,
+               boolean speculative, boolean order, ScanListener listener) {
+        this.executor = executor;
+        this.prober = prober;
+        this.chunks = chunks;
+        this.deadlineMillis = deadlineMillis;
+        this.speculative = speculative;
+        this.order = order;
+        this.listener = listener;
+    }
+
+    public ScanReport scan(InetSocketAddress isa) {
+        ScanReport report = new ScanReport(isa, listener);
+        Deadline deadline = Deadline.after(deadlineMillis);
+        Prober prober = this.prober.withDeadline(deadline);
+        ScanEvents.Phase detection = ScanEvents.beginPhase(ScanEvents.VERSION_DETECTION, isa, 0, 1);
+
+        /*
+         * Version probes and SSLv2 probe all start at once. As soon as
+         * a version probe answers with a version we did not see yet,
+         * the enumeration of that version is started, without waiting
+         * for the other probes.
+         */
+        CompletionService<ServerHello> versionProbes = new ExecutorCompletionService<>(executor);
+        for (int v = 0x0300; v <= 0x0303; v++) {
+            final int version = v;
+            versionProbes.submit(() -> prober.connect(isa, version, ALL_SUITES, false));
+        }
+        Future<ServerHelloSSLv2> v2Probe = executor.submit(() -> prober.connectV2(isa));
+
+        Map<Integer, List<Future<SuiteSet>>> enumerations = new HashMap<>();
+        for (int i = 0x0300; i <= 0x0303; i++) {
+            ServerHello serverHello = await(take(versionProbes));
+            if (serverHello == null) {
+                continue;
+            }
+            /*
+             * The version probes always read the certificate, so that
+             * hello-only enumeration probes do not need to.
+             */
+            if (serverHello.serverCertName != null) {
+                report.addCertificate(serverHello.serverCertHash + ": " + serverHello.serverCertName);
+            }
+            int protocolVersion = serverHello.protocolVersion;
+            if (report.addVersion(protocolVersion) && !speculative) {
+                enumerations.put(protocolVersion, enumerate(prober, isa, protocolVersion, report));
+            }
+            if (serverHello.compression == 1) {
+                report.compress = true;
+            }
+        }
+
+        ServerHelloSSLv2 serverHelloSSLv2 = await(v2Probe);
+        detection.done();
+        if (serverHelloSSLv2 != null) {
+            report.addVersion(0x0200);
+            Set<Integer> vc2 = new TreeSet<>();
+            for (int cipherSuite : serverHelloSSLv2.cipherSuites) {
+                vc2.add(cipherSuite);
+                report.addSuite(0x0200, cipherSuite);
+            }
+            report.supportedCipherSuitesV2 = vc2;
+            if (serverHelloSSLv2.serverCertName != null) {
+                report.addCertificate(serverHelloSSLv2.serverCertHash + ": " + serverHelloSSLv2.serverCertName);
+            }
+        }
+        if (report.isEmpty()) {
+            report.incomplete = deadline.wasReached();
+            return report;
+        }
+
+        if (speculative) {
+            speculate(prober, isa, report, enumerations);
+        }
+        for (Map.Entry<Integer, List<Future<SuiteSet>>> enumeration : enumerations.entrySet()) {
+            report.supportedCipherSuites.put(enumeration.getKey(), merge(enumeration.getValue()));
+        }
+
+        /*
+         * BEAST tests and preference orders only need the suite list of
+         * their own version.
+         */
+        Map<Integer, Future<Boolean>> beastTests = new HashMap<>();
+        Map<Integer, Future<PreferenceOrder>> orders = new HashMap<>();
+        for (Map.Entry<Integer, SuiteSet> entry : report.supportedCipherSuites.entrySet()) {
+            int version = entry.getKey();
+            SuiteSet vsc = entry.getValue();
+            beastTests.put(version, executor.submit(() -> testBEAST(prober, isa, version, vsc)));
+            if (order) {
+                ScanEvents.Phase ordering = ScanEvents.beginPhase(ScanEvents.PREFERENCE_ORDER, isa, version, 1);
+                orders.put(version, PreferenceOrder.detect(vsc, offered -> CompletableFuture.supplyAsync(
+                        () -> PreferenceOrder.choice(prober.connect(isa, version, offered)), executor))
+                        .whenComplete((preferenceOrder, t) -> ordering.done()));
+            }
+        }
+        for (Future<Boolean> beastTest : beastTests.values()) {
+            if (await(beastTest)) {
+                report.vulnBEAST = true;
+            }
+        }
+        for (Map.Entry<Integer, Future<PreferenceOrder>> entry : orders.entrySet()) {
+            report.preferenceOrders.put(entry.getKey(), await(entry.getValue()));
+        }
+        report.incomplete = deadline.wasReached();
+        report.connectionsSaved = prober.cache.saved();
+        return report;
+    }
+
+    /**
+     * Enumerate the lowest version, then check that each other version
+     * has the same suites; the versions which fail the check are added
+     * to the enumerations.
+     */
+    private void speculate(Prober prober, InetSocketAddress isa, ScanReport report,
+                           Map<Integer, List<Future<SuiteSet>>> enumerations) {
+        List<Integer> versions = new ArrayList<>();
+        for (int version : report.protocolVersions) {
+            if (version != 0x0200) {
+                versions.add(version);
+            }
+        }
+        if (versions.isEmpty()) {
+            return;
+        }
+        int base = versions.remove(0);
+        SuiteSet baseSuites = merge(enumerate(prober, isa, base, report));
+        report.supportedCipherSuites.put(base, baseSuites);
+
+        SuiteSet refusal = refusalProbe(baseSuites);
+        List<SuiteSet> confirmations = confirmationProbes(baseSuites);
+        Map<Integer, List<Future<Boolean>>> checks = new HashMap<>();
+        for (int version : versions) {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.SPECULATIVE_CHECK, isa, version,
+                    confirmations.size() + (refusal != null ? 1 : 0));
+            if (refusal != null) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return confirms(prober.connect(isa, version, refusal), refusal, true, report);
+                    } finally {
+                        phase.done();
+                    }
+                }));
+            }
+            for (SuiteSet confirmation : confirmations) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return confirms(prober.connect(isa, version, confirmation), confirmation, false,
+                                report);
+                    } finally {
+                        phase.done();
+                    }
+                }));
+            }
+            checks.put(version, futures);
+        }
+        for (int version : versions) {
+            boolean same = true;
+            for (Future<Boolean> check : checks.get(version)) {
+                same &= await(check);
+            }
+            if (same) {
+                report.addInferred(version, baseSuites);
+            } else {
+                enumerations.put(version, enumerate(prober, isa, version, report));
+            }
+        }
+    }
+
+    private static SuiteSet merge(List<Future<SuiteSet>> chunks) {
+        SuiteSet vsc = new SuiteSet();
+        for (Future<SuiteSet> chunk : chunks) {
+            vsc.or(await(chunk));
+        }
+        return vsc;
+    }
+
+    private List<Future<SuiteSet>> enumerate(Prober prober, InetSocketAddress isa, int version,
+                                                 ScanReport report) {
+        List<Future<SuiteSet>> futures = new ArrayList<>();
+        /*
+         * The suites found by an interrupted earlier scan are taken
+         * out first. The version probe which offered this version has
+         * usually answered already; its answer is the first elimination
+         * step.
+         */
+        SuiteSet candidates = new SuiteSet(ALL_SUITES);
+        futures.add(CompletableFuture.completedFuture(report.resume(version, candidates)));
+        futures.add(CompletableFuture.completedFuture(
+                replayCached(prober.cache, version, candidates, prober.helloOnly, report)));
+        List<SuiteSet> split = splitSuites(candidates, chunks);
+        ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.ENUMERATION, isa, version, split.size());
+        for (SuiteSet chunk : split) {
+            futures.add(executor.submit(() -> {
+                try {
+                    return supportedSuites(prober, isa, version, chunk, report);
+                } finally {
+                    phase.done();
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private static <T> Future<T> take(CompletionService<T> completionService) {
+        try {
+            return completionService.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        }
+    }
+
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.adioss.security.test;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.adioss.security.test.Constants.SSL2_CLIENT_HELLO;
+import static com.adioss.security.test.TestSSLServer.cipherSuiteString;
+import static com.adioss.security.test.TestSSLServer.versionString;
+
+/*
+ * Flight Recorder events of the scans: a Probe event for each
+ * connection (target, version, number of offered suites, chosen suite,
+ * outcome), and a ScanPhase event for each phase of the scan of a host
+ * (version detection, then per version enumeration, speculative check,
+ * BEAST test, preference order) and each certificate fetch (the reading
+ * of a Certificate message by a full probe). Their durations are those
+ * of the probe or phase, so a recording of a batch shows where the time
+ * goes, next to the GC and socket events of the JVM.
+ *
+ * jdk.jfr exists from Java 8u262 on; without it, or when the events are
+ * not enabled in the recording settings, the methods below do nothing.
+ * The event classes are only loaded once JFR is known to be there.
+ */
+final class ScanEvents {
+    static final String ACCEPTED = "accepted";
+    static final String REFUSED = "refused";
+    static final String CONNECT_FAILED = "connect failed";
+    static final String CONNECT_TIMEOUT = "connect timeout";
+    static final String READ_TIMEOUT = "read timeout";
+    static final String ERROR = "error";
+
+    static final String VERSION_DETECTION = "version detection";
+    static final String ENUMERATION = "enumeration";
+    static final String SPECULATIVE_CHECK = "speculative check";
+    static final String BEAST_TEST = "BEAST test";
+    static final String PREFERENCE_ORDER = "preference order";
+    static final String CERTIFICATE_FETCH = "certificate fetch";
+
+    static final int SSL2_OFFERED = Utils.dec16be(SSL2_CLIENT_HELLO, 5) / 3;
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private ScanEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Start timing a probe; the returned event (null when not recorded)
+     * goes to endProbe().
+     */
+    static Object beginProbe() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ProbeEvent event = new ProbeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit the event of a probe; chosenSuite is the suite of the
+     * ServerHello, -1 if none.
+     */
+    static void endProbe(Object event, InetSocketAddress isa, int version, int offeredSuites, int attempt,
+                         int chosenSuite, String outcome) {
+        if (event == null) {
+            return;
+        }
+        ProbeEvent probe = (ProbeEvent) event;
+        probe.end();
+        if (probe.shouldCommit()) {
+            probe.target = target(isa);
+            probe.version = versionString(version);
+            probe.offeredSuites = offeredSuites;
+            probe.chosenSuite = chosenSuite < 0 ? null : cipherSuiteString(chosenSuite);
+            probe.outcome = outcome;
+            probe.attempt = attempt;
+            probe.commit();
+        }
+    }
+
+    /**
+     * The outcome of a blocking probe: whether it connected, and why it
+     * failed (null if it got an answer).
+     */
+    static String outcome(boolean connected, IOException failure) {
+        if (failure == null) {
+            return connected ? ACCEPTED : CONNECT_FAILED;
+        }
+        if (failure instanceof SocketTimeoutException) {
+            return connected ? READ_TIMEOUT : CONNECT_TIMEOUT;
+        }
+        if (!connected) {
+            return CONNECT_FAILED;
+        }
+        // alerts are skipped: a refusal ends with the stream
+        return failure instanceof EOFException ? REFUSED : ERROR;
+    }
+
+    /**
+     * Start a phase of the scan of isa, at a version (0 for all), which
+     * ends when done() was called "parties" times.
+     */
+    static Phase beginPhase(String phase, InetSocketAddress isa, int version, int parties) {
+        if (!AVAILABLE) {
+            return Phase.NONE;
+        }
+        ScanPhaseEvent event = new ScanPhaseEvent();
+        if (!event.isEnabled()) {
+            return Phase.NONE;
+        }
+        event.phase = phase;
+        event.target = isa == null ? null : target(isa);
+        event.version = version == 0 ? null : versionString(version);
+        event.begin();
+        Phase p = new Phase(event, parties);
+        if (parties <= 0) {
+            p.commit();
+        }
+        return p;
+    }
+
+    private static String target(InetSocketAddress isa) {
+        return isa.getHostString() + ":" + isa.getPort();
+    }
+
+    /*
+     * A phase in progress, shared by the tasks which make it.
+     */
+    static final class Phase {
+        static final Phase NONE = new Phase(null, 0);
+
+        private final Object event;
+        private final AtomicInteger remaining;
+
+        private Phase(Object event, int parties) {
+            this.event = event;
+            this.remaining = new AtomicInteger(parties);
+        }
+
+        /**
+         * One of the tasks of the phase is done; the last one commits
+         * the event.
+         */
+        void done() {
+            if (event != null && remaining.decrementAndGet() == 0) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            ScanPhaseEvent e = (ScanPhaseEvent) event;
+            e.end();
+            e.commit();
+        }
+    }
+
+    @Name("com.adioss.security.test.Probe")
+    @Label("SSL/TLS Probe")
+    @Category("CipherExplorer")
+    @Description("One connection: hello message sent, answer decoded")
+    @StackTrace(false)
+    static final class ProbeEvent extends Event {
+        @Label("Target")
+        String target;
+
+        @Label("Version")
+        String version;
+
+        @Label("Offered Suites")
+        int offeredSuites;
+
+        @Label("Chosen Suite")
+        String chosenSuite;
+
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Attempt")
+        @Description("0 for the first attempt, then retries of the throttle")
+        int attempt;
+    }
+
+    @Name("com.adioss.security.test.ScanPhase")
+    @Label("Scan Phase")
+    @Category("CipherExplorer")
+    @Description("A phase of the scan of a host, from its first probe to its last answer")
+    @StackTrace(false)
+    static final class ScanPhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Target")
+        String target;
+
+        @Label("Version")
+        String version;
+    }
+}
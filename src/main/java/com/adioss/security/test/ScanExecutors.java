@@ -0,0 +1,105 @@
+package com.adioss.security.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Executors on which the scan probes run. Each probe holds its thread
+ * for the whole blocking connect()/ServerHello exchange, so the number
+ * of threads (or permits) is also the number of connections in flight.
+ */
+public class ScanExecutors {
+
+    /**
+     * A fixed pool of platform threads.
+     */
+    public static ExecutorService platform(int threads) {
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * One virtual thread per task, at most maxConcurrency of them
+     * running a probe at any time. Virtual threads exist from Java 21
+     * on (see the "jdk21" build profile); the factory method is looked
+     * up at runtime so that this class still compiles for Java 8.
+     */
+    public static ExecutorService virtual(int maxConcurrency) {
+        ExecutorService delegate;
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            delegate = (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+        } catch (InvocationTargetException ite) {
+            throw new IllegalStateException(ite.getCause());
+        }
+        return new Throttled(delegate, maxConcurrency);
+    }
+
+    static boolean isVirtualAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    /*
+     * Caps the number of concurrently running tasks. The permit is taken
+     * inside the task, so submission never blocks and waiting tasks only
+     * cost a parked (virtual) thread.
+     */
+    private static final class Throttled extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        Throttled(ExecutorService delegate, int maxConcurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.adioss.security.test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Append-only journal of a batch scan, so that a batch which died can
+ * be resumed instead of started over. One record per line:
+ *
+ *   S <tab> host:port <tab> version <tab> suite    a suite was found
+ *   I <tab> host:port <tab> version <tab> suite    a suite was inferred
+ *                                                   by -speculative
+ *   D <tab> host:port <tab> 1|0                     the host is done,
+ *                                                   with or without a
+ *                                                   SSL/TLS server
+ *
+ * (version and suite in hexadecimal). Suites are recorded as the scan
+ * engines find them, through ScanListener; the D record is appended
+ * once the result of the host was written. Records are buffered,
+ * flushed after each D record, and a daemon thread forces them to the
+ * disk every SYNC_INTERVAL_MILLIS, whether records keep coming or the
+ * batch is stuck on slow hosts. The listener calls, which run on the
+ * selector thread with -nio, only add to the buffer: it is swapped
+ * under the monitor, then written and forced out of it, by the host
+ * threads and the daemon thread. A crash thus loses at most the
+ * records of the last interval: their suites are probed again, their
+ * hosts scanned again. A torn last line is skipped.
+ *
+ * On restart, the hosts with a D record are skipped. The other ones are
+ * scanned again, but the enumeration of each version only offers the
+ * candidates which are left once the journaled suites are taken out:
+ * the elimination finds the same suites without the connections which
+ * found the journaled ones (see ScanReport.resume()). The resumed
+ * suites are not journaled again, but the next listener is told of
+ * them when they are handed back. I records are only informative:
+ * inferred suites were never probed, so the check which inferred them
+ * runs again.
+ */
+final class ScanJournal implements ScanListener, Closeable {
+    static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final ScanListener next;
+    private final Map<String, Boolean> finished;
+    private final Map<String, Map<Integer, SuiteSet>> resumed;
+    private final FileChannel channel;
+    private final Writer out;
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "scan-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object writeLock = new Object();
+    private StringBuilder pending = new StringBuilder();
+    private boolean dirty;
+    private volatile IOException error;
+
+    private ScanJournal(ScanListener next, Map<String, Boolean> finished,
+                        Map<String, Map<Integer, SuiteSet>> resumed, FileChannel channel) {
+        this.next = next;
+        this.finished = finished;
+        this.resumed = resumed;
+        this.channel = channel;
+        this.out = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+        syncer.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open (or create) the journal, and load what it tells of an earlier
+     * run. The findings are passed on to next.
+     */
+    static ScanJournal open(Path file, ScanListener next) throws IOException {
+        Map<String, Boolean> finished = new HashMap<>();
+        Map<String, Map<Integer, SuiteSet>> resumed = new HashMap<>();
+        boolean torn = false;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    load(line, finished, resumed);
+                }
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+                if (raf.length() > 0) {
+                    raf.seek(raf.length() - 1);
+                    torn = raf.read() != '\n';
+                }
+            }
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        ScanJournal journal = new ScanJournal(next, finished, resumed, channel);
+        if (torn) {
+            journal.append("\n", true);
+        }
+        return journal;
+    }
+
+    private static void load(String line, Map<String, Boolean> finished,
+                             Map<String, Map<Integer, SuiteSet>> resumed) {
+        String[] fields = line.split("\t");
+        try {
+            if (fields.length == 4 && fields[0].equals("S")) {
+                resumed.computeIfAbsent(fields[1], k -> new HashMap<>())
+                        .computeIfAbsent(Integer.parseInt(fields[2], 16), k -> new SuiteSet())
+                        .add(Integer.parseInt(fields[3], 16));
+            } else if (fields.length == 3 && fields[0].equals("D")
+                    && (fields[2].equals("1") || fields[2].equals("0"))) {
+                finished.put(fields[1], fields[2].equals("1"));
+                resumed.remove(fields[1]);
+            }
+        } catch (IllegalArgumentException iae) {
+            // torn line
+        }
+    }
+
+    private static String key(InetSocketAddress isa) {
+        return isa.getHostString() + ":" + isa.getPort();
+    }
+
+    /**
+     * Whether an earlier run finished the target: null if it did not,
+     * otherwise whether a SSL/TLS server was found.
+     */
+    Boolean finished(InetSocketAddress target) {
+        return finished.get(key(target));
+    }
+
+    int finishedCount() {
+        return finished.size();
+    }
+
+    /**
+     * The result of the target was written: do not scan it again.
+     */
+    void finished(InetSocketAddress target, boolean found) {
+        append("D\t" + key(target) + "\t" + (found ? "1" : "0") + "\n", true);
+    }
+
+    @Override
+    public void version(InetSocketAddress isa, int version) {
+        next.version(isa, version);
+    }
+
+    @Override
+    public void suite(InetSocketAddress isa, int version, int suite) {
+        if (version != 0x0200) {
+            append(String.format("S\t%s\t%04X\t%04X\n", key(isa), version, suite), false);
+        }
+        next.suite(isa, version, suite);
+    }
+
+    @Override
+    public void inferred(InetSocketAddress isa, int version, SuiteSet suites) {
+        StringBuilder records = new StringBuilder();
+        for (int s = suites.nextSetBit(0); s >= 0; s = suites.nextSetBit(s + 1)) {
+            records.append(String.format("I\t%s\t%04X\t%04X\n", key(isa), version, s));
+        }
+        append(records.toString(), false);
+        next.inferred(isa, version, suites);
+    }
+
+    @Override
+    public void certificate(InetSocketAddress isa, String certID) {
+        next.certificate(isa, certID);
+    }
+
+    /**
+     * The journaled suites, which the next listener is told of here:
+     * they are not told through suite() again, which would journal them
+     * twice.
+     */
+    @Override
+    public SuiteSet resumed(InetSocketAddress isa, int version) {
+        Map<Integer, SuiteSet> versions = resumed.get(key(isa));
+        SuiteSet suites = versions == null ? null : versions.get(version);
+        if (suites != null) {
+            for (int s = suites.nextSetBit(0); s >= 0; s = suites.nextSetBit(s + 1)) {
+                next.suite(isa, version, s);
+            }
+        }
+        return suites;
+    }
+
+    private void append(String record, boolean flush) {
+        if (error != null) {
+            return;
+        }
+        synchronized (this) {
+            pending.append(record);
+        }
+        if (flush) {
+            write(false);
+        }
+    }
+
+    /**
+     * Force the records appended since the last call to the disk.
+     */
+    void sync() {
+        write(true);
+    }
+
+    /**
+     * Write the buffered records to the file, and force them to the disk
+     * if force. Only the buffer swap holds the monitor which append()
+     * takes.
+     */
+    private void write(boolean force) {
+        synchronized (writeLock) {
+            // a last sync may wait here for close()
+            if (error != null || !channel.isOpen()) {
+                return;
+            }
+            StringBuilder records;
+            synchronized (this) {
+                records = pending;
+                pending = new StringBuilder(records.capacity());
+            }
+            try {
+                if (records.length() > 0) {
+                    out.append(records);
+                    out.flush();
+                    dirty = true;
+                }
+                if (force && dirty) {
+                    channel.force(false);
+                    dirty = false;
+                }
+            } catch (IOException ioe) {
+                error = ioe;
+            }
+        }
+    }
+
+    /**
+     * Force the journal to the disk, and close it. Throws the first
+     * error met while writing it, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        // no interrupt: it would close the channel under a running force()
+        syncer.shutdown();
+        synchronized (writeLock) {
+            try {
+                write(true);
+            } finally {
+                out.close();
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
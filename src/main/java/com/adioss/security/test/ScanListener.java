@@ -0,0 +1,44 @@
+package com.adioss.security.test;
+
+import java.net.InetSocketAddress;
+
+/*
+ * Told what a scan finds as soon as it is found, on the threads of the
+ * scan (hence concurrently): each protocol version, each cipher suite
+ * of a version (24-bit codes for SSLv2), each certificate. Each fact is
+ * told once per scan. The suites of a version confirmed speculatively
+ * were not probed one by one: they are not told as suites, but all at
+ * once through inferred(), when the confirmation is over. Verdicts need
+ * the complete ScanReport, which the scan returns.
+ *
+ * A listener may also hand back what an interrupted earlier scan found
+ * (see ScanJournal), so that it is not probed again.
+ */
+interface ScanListener {
+    ScanListener NONE = new ScanListener() {
+    };
+
+    default void version(InetSocketAddress isa, int version) {
+    }
+
+    default void suite(InetSocketAddress isa, int version, int suite) {
+    }
+
+    default void certificate(InetSocketAddress isa, String certID) {
+    }
+
+    /**
+     * A speculative check found this version to have the same suites
+     * as a lower one, which are taken for its own without being probed.
+     */
+    default void inferred(InetSocketAddress isa, int version, SuiteSet suites) {
+    }
+
+    /**
+     * The suites of this version which an earlier scan of isa already
+     * found, null if none. They are not told again through suite().
+     */
+    default SuiteSet resumed(InetSocketAddress isa, int version) {
+        return null;
+    }
+}
@@ -0,0 +1,529 @@
+package com.adioss.security.test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/*
+ * Counters and histograms of the probes: how long they take (the
+ * connect step, and the whole probe), how they fail (no connection,
+ * timeouts, refusals, errors in the exchange), and the bytes they
+ * carry. Scans
+ * wrapped with instrument() also give the scan time and the number of
+ * probes of each host, the hosts in progress and the slowest ones.
+ *
+ * Prober and NioProbeEngine record into INSTANCE. It is exposed with
+ * register() as a JMX MBean, and with serve() at http://.../metrics in
+ * the Prometheus text format, together with the certificate cache and
+ * buffer pool counters.
+ */
+final class ScanMetrics implements ScanMetricsMBean {
+    static final String OBJECT_NAME = "com.adioss.security.test:type=ScanMetrics";
+
+    static final int TLS = 0;
+    static final int SSL2 = 1;
+    private static final String[] KINDS = {"tls", "sslv2"};
+    private static final int SLOWEST = 10;
+    private static final long MS = 1000000L;
+
+    private static final long[] PROBE_BOUNDS = {
+            MS, 2500000L, 5 * MS, 10 * MS, 25 * MS, 50 * MS, 100 * MS, 250 * MS, 500 * MS,
+            1000 * MS, 2500 * MS, 5000 * MS, 10000 * MS};
+    private static final long[] HOST_BOUNDS = {
+            100 * MS, 250 * MS, 500 * MS, 1000 * MS, 2500 * MS, 5000 * MS, 10000 * MS, 25000 * MS,
+            50000 * MS, 100000 * MS, 250000 * MS};
+    private static final long[] COUNT_BOUNDS = {1, 5, 10, 25, 50, 100, 250, 500, 1000};
+
+    static final ScanMetrics INSTANCE = new ScanMetrics();
+
+    private final Histogram[] probeTime = {new Histogram(PROBE_BOUNDS), new Histogram(PROBE_BOUNDS)};
+    private final Histogram connectTime = new Histogram(PROBE_BOUNDS);
+    private final Histogram hostTime = new Histogram(HOST_BOUNDS);
+    private final Histogram hostProbes = new Histogram(COUNT_BOUNDS);
+    final AtomicLong connectFailures = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    final AtomicLong exchangeFailures = new AtomicLong();
+    final AtomicLong refusals = new AtomicLong();
+    final AtomicLong bytesSent = new AtomicLong();
+    final AtomicLong bytesReceived = new AtomicLong();
+    final AtomicLong hostsFound = new AtomicLong();
+    final AtomicLong inferredSuites = new AtomicLong();
+    private final Map<InetSocketAddress, Host> inProgress = new ConcurrentHashMap<>();
+    private final List<Host> slowest = new ArrayList<>();
+
+    /**
+     * A connection was established after that many nanoseconds.
+     */
+    void connected(long nanos) {
+        connectTime.record(nanos);
+    }
+
+    void connectFailed(boolean timeout) {
+        connectFailures.incrementAndGet();
+        if (timeout) {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * The server refused the hello of a connected probe: it closed the
+     * connection, after an alert or not. This is the normal answer to a
+     * hello without any suite the server accepts, not a failure.
+     */
+    void refused() {
+        refusals.incrementAndGet();
+    }
+
+    /**
+     * The exchange of a connected probe ended on that exception: an end
+     * of stream is a refusal, anything else a failure.
+     */
+    void exchangeFailed(IOException failure) {
+        if (failure instanceof EOFException) {
+            refused();
+        } else {
+            exchangeFailed(failure instanceof SocketTimeoutException);
+        }
+    }
+
+    /**
+     * The exchange of a connected probe failed (I/O or decoding error,
+     * or timeout).
+     */
+    void exchangeFailed(boolean timeout) {
+        exchangeFailures.incrementAndGet();
+        if (timeout) {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * A probe of that kind (TLS or SSL2) to isa ended, successfully or
+     * not, that many nanoseconds after it started connecting.
+     */
+    void probed(InetSocketAddress isa, int kind, long nanos) {
+        probeTime[kind].record(nanos);
+        Host host = inProgress.get(isa);
+        if (host != null) {
+            host.probes.incrementAndGet();
+        }
+    }
+
+    /**
+     * The connection, counting the bytes which go through it.
+     */
+    Transport.Connection counting(Transport.Connection connection) {
+        return new Transport.Connection() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new FilterInputStream(connection.getInputStream()) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            bytesReceived.incrementAndGet();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buf, int off, int len) throws IOException {
+                        int n = super.read(buf, off, len);
+                        if (n > 0) {
+                            bytesReceived.addAndGet(n);
+                        }
+                        return n;
+                    }
+                };
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return new FilterOutputStream(connection.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        bytesSent.incrementAndGet();
+                    }
+
+                    @Override
+                    public void write(byte[] buf, int off, int len) throws IOException {
+                        out.write(buf, off, len);
+                        bytesSent.addAndGet(len);
+                    }
+                };
+            }
+
+            @Override
+            public void close() {
+                connection.close();
+            }
+        };
+    }
+
+    /**
+     * The scanner, recording the scan time and probes of each host.
+     */
+    Function<InetSocketAddress, ScanReport> instrument(Function<InetSocketAddress, ScanReport> scanner) {
+        return isa -> {
+            Host host = new Host(isa);
+            inProgress.put(isa, host);
+            boolean found = false;
+            try {
+                ScanReport report = scanner.apply(isa);
+                found = !report.isEmpty();
+                return report;
+            } finally {
+                inProgress.remove(isa, host);
+                scanned(host, found);
+            }
+        };
+    }
+
+    private void scanned(Host host, boolean found) {
+        host.elapsed = System.nanoTime() - host.start;
+        hostTime.record(host.elapsed);
+        hostProbes.record(host.probes.get());
+        if (found) {
+            hostsFound.incrementAndGet();
+        }
+        synchronized (slowest) {
+            int i = slowest.size();
+            while (i > 0 && slowest.get(i - 1).elapsed < host.elapsed) {
+                i--;
+            }
+            if (i < SLOWEST) {
+                slowest.add(i, host);
+                if (slowest.size() > SLOWEST) {
+                    slowest.remove(SLOWEST);
+                }
+            }
+        }
+    }
+
+    /**
+     * Register INSTANCE with the platform MBean server.
+     */
+    static void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(INSTANCE, ScanMetricsMBean.class), new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Serve the metrics of INSTANCE at /metrics on the loopback
+     * interface, from a daemon thread. Port 0 picks a free port; the
+     * server is returned so that its address can be read.
+     */
+    static HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = INSTANCE.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // The default executor runs exchanges on the dispatcher thread.
+        server.start();
+        return server;
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format.
+     */
+    String prometheus() {
+        StringBuilder sb = new StringBuilder(8192);
+        header(sb, "probes_total", "counter", "Probes which connected or tried to, by hello message.");
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            sample(sb, "probes_total", "hello=\"" + KINDS[kind] + "\"", probeTime[kind].count());
+        }
+        header(sb, "probe_duration_seconds", "histogram", "Time from connect to the end of a probe.");
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            probeTime[kind].write(sb, "probe_duration_seconds", "hello=\"" + KINDS[kind] + "\",", 1e9);
+        }
+        header(sb, "connect_duration_seconds", "histogram", "Time to establish a probe connection.");
+        connectTime.write(sb, "connect_duration_seconds", "", 1e9);
+        counter(sb, "connect_failures_total", "Probes which could not connect.", connectFailures.get());
+        counter(sb, "timeouts_total", "Probes which timed out, connecting or reading.", timeouts.get());
+        counter(sb, "refusals_total", "Connected probes which the server refused by closing the connection.",
+                refusals.get());
+        counter(sb, "exchange_failures_total", "Connected probes which failed on an I/O or decoding error.",
+                exchangeFailures.get());
+        counter(sb, "sent_bytes_total", "Bytes sent by the probes.", bytesSent.get());
+        counter(sb, "received_bytes_total", "Bytes received by the probes.", bytesReceived.get());
+        header(sb, "host_scan_duration_seconds", "histogram", "Scan time of a host.");
+        hostTime.write(sb, "host_scan_duration_seconds", "", 1e9);
+        header(sb, "host_probes", "histogram", "Probes of the scan of a host.");
+        hostProbes.write(sb, "host_probes", "", 1);
+        counter(sb, "hosts_found_total", "Scanned hosts with an SSL/TLS server.", hostsFound.get());
+        counter(sb, "inferred_suites_total", "Suites reported from a speculative check, without their own probe.",
+                inferredSuites.get());
+        header(sb, "hosts_in_progress", "gauge", "Hosts being scanned.");
+        sample(sb, "hosts_in_progress", null, inProgress.size());
+        header(sb, "slowest_host_scan_seconds", "gauge", "Scan time of the slowest hosts so far, by rank.");
+        int rank = 0;
+        for (Host host : slowest()) {
+            sb.append("cipherexplorer_slowest_host_scan_seconds{rank=\"").append(++rank).append("\",host=\"")
+                    .append(escape(host.name())).append("\"} ").append(host.elapsed / 1e9).append('\n');
+        }
+        counter(sb, "certificate_cache_hits_total", "Certificates found in the cache.",
+                CertificateCache.INSTANCE.hits.get());
+        counter(sb, "certificate_cache_misses_total", "Certificates decoded.",
+                CertificateCache.INSTANCE.misses.get());
+        counter(sb, "record_buffers_allocated_total", "Record buffers allocated by the pool.",
+                BufferPool.ALLOCATED.get());
+        return sb.toString();
+    }
+
+    @Override
+    public long getProbes() {
+        return probeTime[TLS].count() + probeTime[SSL2].count();
+    }
+
+    @Override
+    public long getSSLv2Probes() {
+        return probeTime[SSL2].count();
+    }
+
+    @Override
+    public long getConnectFailures() {
+        return connectFailures.get();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getRefusals() {
+        return refusals.get();
+    }
+
+    @Override
+    public long getExchangeFailures() {
+        return exchangeFailures.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public double getProbeMillisMean() {
+        long count = getProbes();
+        return count == 0 ? 0 : (probeTime[TLS].sum() + probeTime[SSL2].sum()) / 1e6 / count;
+    }
+
+    @Override
+    public double getProbeMillisP50() {
+        return probeTime[TLS].percentile(50) / 1e6;
+    }
+
+    @Override
+    public double getProbeMillisP99() {
+        return probeTime[TLS].percentile(99) / 1e6;
+    }
+
+    @Override
+    public double getConnectMillisP99() {
+        return connectTime.percentile(99) / 1e6;
+    }
+
+    @Override
+    public long getHostsScanned() {
+        return hostTime.count();
+    }
+
+    @Override
+    public long getHostsFound() {
+        return hostsFound.get();
+    }
+
+    @Override
+    public long getInferredSuites() {
+        return inferredSuites.get();
+    }
+
+    @Override
+    public double getHostProbesMean() {
+        long count = hostProbes.count();
+        return count == 0 ? 0 : (double) hostProbes.sum() / count;
+    }
+
+    @Override
+    public double getCertificateCacheHitRate() {
+        long hits = CertificateCache.INSTANCE.hits.get();
+        long total = hits + CertificateCache.INSTANCE.misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String[] getHostsInProgress() {
+        long now = System.nanoTime();
+        List<String> hosts = new ArrayList<>();
+        for (Host host : inProgress.values()) {
+            hosts.add(host.name() + " " + (now - host.start) / MS + " ms, " + host.probes.get() + " probes");
+        }
+        return hosts.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getSlowestHosts() {
+        List<String> hosts = new ArrayList<>();
+        for (Host host : slowest()) {
+            hosts.add(host.name() + " " + host.elapsed / MS + " ms, " + host.probes.get() + " probes");
+        }
+        return hosts.toArray(new String[0]);
+    }
+
+    private List<Host> slowest() {
+        synchronized (slowest) {
+            return new ArrayList<>(slowest);
+        }
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP cipherexplorer_").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE cipherexplorer_").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "counter", help);
+        sample(sb, name, null, value);
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append("cipherexplorer_").append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /*
+     * A host being scanned, or one of the slowest scans.
+     */
+    private static final class Host {
+        final InetSocketAddress isa;
+        final long start = System.nanoTime();
+        final AtomicLong probes = new AtomicLong();
+        volatile long elapsed;
+
+        Host(InetSocketAddress isa) {
+            this.isa = isa;
+        }
+
+        String name() {
+            return isa.getHostString() + ":" + isa.getPort();
+        }
+    }
+
+    /*
+     * Counts of values by bucket, the buckets being bounded by the
+     * increasing upper bounds given (inclusive), plus a last one for
+     * larger values.
+     */
+    static final class Histogram {
+        private final long[] bounds;
+        private final AtomicLongArray counts;
+        private final AtomicLong sum = new AtomicLong();
+
+        Histogram(long[] bounds) {
+            this.bounds = bounds;
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        void record(long value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            counts.incrementAndGet(i);
+            sum.addAndGet(value);
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        long sum() {
+            return sum.get();
+        }
+
+        /**
+         * The upper bound of the bucket holding the p-th percentile; the
+         * largest bound for the last bucket, 0 when empty.
+         */
+        long percentile(int p) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return bounds[bounds.length - 1];
+        }
+
+        /**
+         * The buckets, sum and count series; labels is empty or ends
+         * with a comma, and values are divided by unit for the unit of
+         * name.
+         */
+        void write(StringBuilder sb, String name, String labels, double unit) {
+            long cumulative = 0;
+            for (int i = 0; i <= bounds.length; i++) {
+                cumulative += counts.get(i);
+                String le = i < bounds.length ? Double.toString(bounds[i] / unit) : "+Inf";
+                sb.append("cipherexplorer_").append(name).append("_bucket{").append(labels)
+                        .append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            String braces = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            sb.append("cipherexplorer_").append(name).append("_sum").append(braces).append(' ')
+                    .append(sum.get() / unit).append('\n');
+            sb.append("cipherexplorer_").append(name).append("_count").append(braces).append(' ')
+                    .append(cumulative).append('\n');
+        }
+    }
+}
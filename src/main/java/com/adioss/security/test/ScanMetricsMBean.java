@@ -0,0 +1,59 @@
+package com.adioss.security.test;
+
+/*
+ * The JMX view of ScanMetrics. Durations are in milliseconds; the
+ * percentiles are upper bounds, those of the histogram buckets.
+ */
+public interface ScanMetricsMBean {
+    long getProbes();
+
+    long getSSLv2Probes();
+
+    long getConnectFailures();
+
+    long getTimeouts();
+
+    /**
+     * Connected probes which the server refused (alert, closed
+     * connection); not counted as exchange failures.
+     */
+    long getRefusals();
+
+    long getExchangeFailures();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    double getProbeMillisMean();
+
+    double getProbeMillisP50();
+
+    double getProbeMillisP99();
+
+    double getConnectMillisP99();
+
+    long getHostsScanned();
+
+    long getHostsFound();
+
+    /**
+     * Suites reported for a version because a speculative check found
+     * it the same as a lower one, without probing them.
+     */
+    long getInferredSuites();
+
+    double getHostProbesMean();
+
+    double getCertificateCacheHitRate();
+
+    /**
+     * The hosts being scanned: address, elapsed time and probes so far.
+     */
+    String[] getHostsInProgress();
+
+    /**
+     * The slowest scans so far, slowest first.
+     */
+    String[] getSlowestHosts();
+}
@@ -0,0 +1,220 @@
+package com.adioss.security.test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/*
+ * Command-line options of TestSSLServer. Options come first, then
+ * either "servername [ port ]" or nothing when -batch is used.
+ */
+class ScanOptions {
+    int threads;
+    int chunks = 4;
+    int connectTimeout = Prober.DEFAULT_CONNECT_TIMEOUT;
+    int readTimeout = Prober.DEFAULT_READ_TIMEOUT;
+    long deadline;
+    boolean nio;
+    boolean virtual;
+    boolean helloOnly;
+    boolean speculative;
+    boolean order;
+    boolean compliance;
+    boolean adaptive;
+    int subnetRate;
+    boolean reset;
+    InetAddress bind;
+    int lowPort;
+    int highPort;
+    int sendBuffer;
+    int receiveBuffer;
+    boolean jmx;
+    int metricsPort = -1;
+    String batch;
+    int hosts = 32;
+    String outDir;
+    boolean json;
+    String journal;
+    String name;
+    int port = 443;
+
+    /**
+     * Probes in flight: -threads when given, otherwise 8 threads or
+     * NioProbeEngine.DEFAULT_MAX_IN_FLIGHT with -nio.
+     */
+    int concurrency() {
+        if (threads > 0) {
+            return threads;
+        }
+        return nio ? NioProbeEngine.DEFAULT_MAX_IN_FLIGHT : 8;
+    }
+
+    /**
+     * The per-target throttle of -adaptive and -subnetrate, null when
+     * neither is given. Windows are at most the number of probes in
+     * flight.
+     */
+    TargetThrottle throttle() {
+        if (!adaptive && subnetRate == 0) {
+            return null;
+        }
+        return new TargetThrottle(concurrency(), adaptive, subnetRate);
+    }
+
+    /**
+     * The connection factory of -reset, -bind, -ports, -sndbuf and
+     * -rcvbuf.
+     */
+    ConnectionFactory connections() {
+        return new ConnectionFactory(reset, bind, lowPort, highPort, sendBuffer, receiveBuffer);
+    }
+
+    static ScanOptions parse(String[] args) {
+        ScanOptions options = new ScanOptions();
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-") && !args[i].equals("-")) {
+            String option = args[i++];
+            if (option.equals("-nio")) {
+                options.nio = true;
+                continue;
+            }
+            if (option.equals("-virtual")) {
+                options.virtual = true;
+                continue;
+            }
+            if (option.equals("-helloonly")) {
+                options.helloOnly = true;
+                continue;
+            }
+            if (option.equals("-speculative")) {
+                options.speculative = true;
+                continue;
+            }
+            if (option.equals("-order")) {
+                options.order = true;
+                continue;
+            }
+            if (option.equals("-compliance")) {
+                options.compliance = true;
+                continue;
+            }
+            if (option.equals("-adaptive")) {
+                options.adaptive = true;
+                continue;
+            }
+            if (option.equals("-reset")) {
+                options.reset = true;
+                continue;
+            }
+            if (option.equals("-jmx")) {
+                options.jmx = true;
+                continue;
+            }
+            if (option.equals("-json")) {
+                options.json = true;
+                continue;
+            }
+            if (i == args.length) {
+                throw new IllegalArgumentException("missing value for " + option);
+            }
+            String value = args[i++];
+            switch (option) {
+                case "-threads":
+                    options.threads = parseInt(value, 1, 100000);
+                    break;
+                case "-chunks":
+                    options.chunks = parseInt(value, 1, 64);
+                    break;
+                case "-ctimeout":
+                    options.connectTimeout = parseInt(value, 0, Integer.MAX_VALUE);
+                    break;
+                case "-rtimeout":
+                    options.readTimeout = parseInt(value, 0, Integer.MAX_VALUE);
+                    break;
+                case "-deadline":
+                    options.deadline = parseInt(value, 0, Integer.MAX_VALUE);
+                    break;
+                case "-batch":
+                    options.batch = value;
+                    break;
+                case "-hosts":
+                    options.hosts = parseInt(value, 1, 100000);
+                    break;
+                case "-out":
+                    options.outDir = value;
+                    break;
+                case "-journal":
+                    options.journal = value;
+                    break;
+                case "-subnetrate":
+                    options.subnetRate = parseInt(value, 1, 1000000);
+                    break;
+                case "-bind":
+                    try {
+                        options.bind = InetAddress.getByName(value);
+                    } catch (UnknownHostException uhe) {
+                        throw new IllegalArgumentException("unknown local address: " + value);
+                    }
+                    break;
+                case "-ports": {
+                    int dash = value.indexOf('-');
+                    if (dash < 0) {
+                        throw new IllegalArgumentException("expected low-high: " + value);
+                    }
+                    options.lowPort = parseInt(value.substring(0, dash), 1, 65535);
+                    options.highPort = parseInt(value.substring(dash + 1), options.lowPort, 65535);
+                    break;
+                }
+                case "-sndbuf":
+                    options.sendBuffer = parseInt(value, 1, Integer.MAX_VALUE);
+                    break;
+                case "-rcvbuf":
+                    options.receiveBuffer = parseInt(value, 1, Integer.MAX_VALUE);
+                    break;
+                case "-metrics":
+                    options.metricsPort = parseInt(value, 0, 65535);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + option);
+            }
+        }
+        if (options.nio && options.virtual) {
+            throw new IllegalArgumentException("-nio and -virtual are exclusive");
+        }
+        if (options.compliance && (options.nio || options.speculative || options.order)) {
+            throw new IllegalArgumentException("-compliance excludes -nio, -speculative and -order");
+        }
+        if (options.json && options.outDir != null) {
+            throw new IllegalArgumentException("-json and -out are exclusive");
+        }
+        if (options.journal != null && options.batch == null) {
+            throw new IllegalArgumentException("-journal needs -batch");
+        }
+        if (options.batch != null) {
+            if (i != args.length) {
+                throw new IllegalArgumentException("no server name expected with -batch");
+            }
+            return options;
+        }
+        if (args.length - i == 0 || args.length - i > 2) {
+            throw new IllegalArgumentException("expected servername [ port ]");
+        }
+        options.name = args[i];
+        if (args.length - i == 2) {
+            options.port = parseInt(args[i + 1], 1, 65535);
+        }
+        return options;
+    }
+
+    static int parseInt(String value, int min, int max) {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("not a number: " + value);
+        }
+        if (n < min || n > max) {
+            throw new IllegalArgumentException("out of range [" + min + ", " + max + "]: " + value);
+        }
+        return n;
+    }
+}
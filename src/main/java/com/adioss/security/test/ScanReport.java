@@ -0,0 +1,253 @@
+package com.adioss.security.test;
+
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static com.adioss.security.test.Constants.STRONG;
+import static com.adioss.security.test.TestSSLServer.*;
+
+/*
+ * Everything learned about one server during a scan. The scan phases
+ * fill it concurrently (hence the concurrent certificate set); the
+ * report is printed only once all phases are over. Versions, suites and
+ * certificates found through addVersion(), addSuite(), addInferred()
+ * and addCertificate() are also told to the listener of the report.
+ */
+public class ScanReport {
+    final InetSocketAddress address;
+    final Set<Integer> protocolVersions = new TreeSet<>();
+    final Map<Integer, SuiteSet> supportedCipherSuites = new TreeMap<>();
+    Set<Integer> supportedCipherSuitesV2; // 24-bit codes, null if no SSLv2
+    final Set<Integer> speculativeVersions = new TreeSet<>();
+    final Map<Integer, PreferenceOrder> preferenceOrders = new TreeMap<>();
+    Map<Integer, SuiteSet> bannedSuites; // compliance scans only
+    final Set<String> certID = new ConcurrentSkipListSet<>();
+    boolean compress;
+    boolean vulnBEAST;
+    boolean incomplete;
+    int connectionsSaved;
+    final ScanListener listener;
+
+    ScanReport(InetSocketAddress address) {
+        this(address, ScanListener.NONE);
+    }
+
+    ScanReport(InetSocketAddress address, ScanListener listener) {
+        this.address = address;
+        this.listener = listener;
+    }
+
+    /**
+     * Add a protocol version; returns false if it was already known.
+     */
+    boolean addVersion(int version) {
+        if (!protocolVersions.add(version)) {
+            return false;
+        }
+        listener.version(address, version);
+        return true;
+    }
+
+    /**
+     * Tell the listener of a suite found at this version; the suite
+     * sets of the report are filled by the scan phases.
+     */
+    void addSuite(int version, int suite) {
+        listener.suite(address, version, suite);
+    }
+
+    /**
+     * Take the suites of a lower version for those of this one, as a
+     * speculative check found them the same: the version is marked
+     * speculative, and the listener is told that its suites were
+     * inferred rather than probed.
+     */
+    void addInferred(int version, SuiteSet suites) {
+        supportedCipherSuites.put(version, new SuiteSet(suites));
+        speculativeVersions.add(version);
+        ScanMetrics.INSTANCE.inferredSuites.addAndGet(suites.size());
+        listener.inferred(address, version, suites);
+    }
+
+    void addCertificate(String id) {
+        if (certID.add(id)) {
+            listener.certificate(address, id);
+        }
+    }
+
+    /**
+     * Take out of the candidates of an enumeration the suites which an
+     * earlier scan already found at this version (see
+     * ScanListener.resumed()), and return them: they are part of the
+     * result without being probed again. The listener handed them back,
+     * so it is not told of them again.
+     */
+    SuiteSet resume(int version, SuiteSet candidates) {
+        SuiteSet found = new SuiteSet();
+        SuiteSet resumed = listener.resumed(address, version);
+        if (resumed != null) {
+            found.or(resumed);
+            found.and(candidates);
+            candidates.andNot(found);
+        }
+        return found;
+    }
+
+    /**
+     * The lowest strength of the suites of all versions.
+     */
+    int minStrength() {
+        int agMinStrength = STRONG;
+        for (SuiteSet vsc : supportedCipherSuites.values()) {
+            agMinStrength = Math.min(TestSSLServer.minStrength(vsc), agMinStrength);
+        }
+        if (supportedCipherSuitesV2 != null) {
+            agMinStrength = Math.min(TestSSLServer.minStrength(supportedCipherSuitesV2), agMinStrength);
+        }
+        return agMinStrength;
+    }
+
+    /**
+     * The strength achievable at every version (the lowest of their
+     * highest strengths).
+     */
+    int maxStrength() {
+        int agMaxStrength = STRONG;
+        for (SuiteSet vsc : supportedCipherSuites.values()) {
+            agMaxStrength = Math.min(TestSSLServer.maxStrength(vsc), agMaxStrength);
+        }
+        if (supportedCipherSuitesV2 != null) {
+            agMaxStrength = Math.min(TestSSLServer.maxStrength(supportedCipherSuitesV2), agMaxStrength);
+        }
+        return agMaxStrength;
+    }
+
+    /**
+     * Compliance scans: whether a banned suite (or SSLv2) was accepted.
+     */
+    boolean bannedAccepted() {
+        boolean accepted = supportedCipherSuitesV2 != null;
+        for (SuiteSet suites : bannedSuites.values()) {
+            accepted |= !suites.isEmpty();
+        }
+        return accepted;
+    }
+
+    boolean isEmpty() {
+        return protocolVersions.isEmpty();
+    }
+
+    void print(PrintStream out) {
+        if (incomplete) {
+            out.println("WARNING: scan deadline reached, results are incomplete");
+        }
+        if (bannedSuites != null) {
+            printCompliance(out);
+            return;
+        }
+        out.print("Supported versions:");
+        for (int protocolVersion : protocolVersions) {
+            out.print(" ");
+            out.print(versionString(protocolVersion));
+        }
+        out.println();
+        out.println("Deflate compression: " + (compress ? "YES" : "no"));
+
+        out.println("Supported cipher suites" + (preferenceOrders.isEmpty() ? " (ORDER IS NOT SIGNIFICANT):"
+                : " (SERVER PREFERENCE ORDER, unless noted):"));
+        if (supportedCipherSuitesV2 != null) {
+            out.println("  " + versionString(0x0200));
+            for (int c : supportedCipherSuitesV2) {
+                out.println("     " + cipherSuiteStringV2(c));
+            }
+        }
+        SuiteSet lastSuppCS = null;
+        int[] lastListed = null;
+        for (int protocolVersion : protocolVersions) {
+            if (protocolVersion == 0x0200) {
+                continue;
+            }
+            SuiteSet vsc = supportedCipherSuites.get(protocolVersion);
+            PreferenceOrder order = preferenceOrders.get(protocolVersion);
+            int[] listed = order == null ? vsc.toIntArray() : order.suites;
+            String speculative = speculativeVersions.contains(protocolVersion) ? "speculative" : null;
+            if (lastSuppCS == null || !lastSuppCS.equals(vsc) || !Arrays.equals(lastListed, listed)) {
+                String orderNote = null;
+                if (order != null && order.followsClient) {
+                    orderNote = "server follows the client order";
+                } else if (order != null && !order.complete) {
+                    orderNote = "order unknown, probes failed";
+                }
+                out.println("  " + versionString(protocolVersion) + notes(speculative, orderNote));
+                for (int c : listed) {
+                    out.println("     " + cipherSuiteString(c));
+                }
+                lastSuppCS = vsc;
+                lastListed = listed;
+            } else {
+                out.println("  (" + versionString(protocolVersion) + ": idem"
+                        + (speculative == null ? "" : ", " + speculative) + ")");
+            }
+        }
+        printCertificates(out);
+        out.println("Minimal encryption strength:     " + strengthString(minStrength()));
+        out.println("Achievable encryption strength:  " + strengthString(maxStrength()));
+        out.println("BEAST status: " + (vulnBEAST ? "vulnerable" : "protected"));
+        out.println("CRIME status: " + (compress ? "vulnerable" : "protected"));
+    }
+
+    /**
+     * Compliance scan: only the banned suites which were accepted.
+     */
+    private void printCompliance(PrintStream out) {
+        boolean accepted = bannedAccepted();
+        out.println("Banned cipher suites: " + (accepted ? "ACCEPTED" : "none accepted"));
+        if (supportedCipherSuitesV2 != null) {
+            out.println("  " + versionString(0x0200) + " (SSL)");
+            for (int c : supportedCipherSuitesV2) {
+                out.println("     " + cipherSuiteStringV2(c));
+            }
+        }
+        for (Map.Entry<Integer, SuiteSet> entry : bannedSuites.entrySet()) {
+            SuiteSet suites = entry.getValue();
+            if (suites.isEmpty()) {
+                continue;
+            }
+            out.println("  " + versionString(entry.getKey()));
+            for (int c = suites.nextSetBit(0); c >= 0; c = suites.nextSetBit(c + 1)) {
+                out.println("     " + cipherSuiteString(c) + " " + ComplianceEngine.exclusions(c));
+            }
+        }
+        printCertificates(out);
+        out.println("Compliance status: " + (accepted ? "FAILED" : "passed"));
+    }
+
+    private void printCertificates(PrintStream out) {
+        out.println("----------------------");
+        if (certID.size() == 0) {
+            out.println("No server certificate !");
+        } else {
+            out.println("Server certificate(s):");
+            for (String cc : certID) {
+                out.println("  " + cc);
+            }
+        }
+        out.println("----------------------");
+    }
+
+    private static String notes(String... notes) {
+        StringBuilder sb = new StringBuilder();
+        for (String note : notes) {
+            if (note != null) {
+                sb.append(sb.length() == 0 ? " (" : ", ").append(note);
+            }
+        }
+        return sb.length() == 0 ? "" : sb.append(")").toString();
+    }
+}
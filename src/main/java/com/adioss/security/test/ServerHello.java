@@ -1,11 +1,8 @@
 package com.adioss.security.test;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
+import java.net.InetSocketAddress;
 
 import static com.adioss.security.test.Utils.*;
 
@@ -24,32 +21,60 @@ public class ServerHello {
     String serverCertHash;
 
     ServerHello(InputStream in) throws IOException {
+        this(in, false);
+    }
+
+    /**
+     * With helloOnly, decoding stops right after the ServerHello
+     * message: the certificate is neither read nor parsed.
+     */
+    ServerHello(InputStream in, boolean helloOnly) throws IOException {
+        this(in, helloOnly, null, 0);
+    }
+
+    /**
+     * Same as above, reading the answer of isa to a hello of that
+     * version: the reading of the Certificate message is a
+     * CERTIFICATE_FETCH phase of its scan.
+     */
+    ServerHello(InputStream in, boolean helloOnly, InetSocketAddress isa, int version) throws IOException {
         InputRecord rec = new InputRecord(in);
+        byte[] scratch = BufferPool.acquire();
+        try {
+            decode(rec, scratch, helloOnly, isa, version);
+        } finally {
+            BufferPool.release(scratch);
+            rec.close();
+        }
+    }
+
+    private void decode(InputRecord rec, byte[] scratch, boolean helloOnly, InetSocketAddress isa, int version)
+            throws IOException {
         rec.setExpectedType(Constants.HANDSHAKE);
 
         /**
          * First, get the handshake message header (4 bytes).
          * First byte should be 2 ("ServerHello"), then comes the message size (over 3 bytes).
          */
-        byte[] buf = new byte[4];
-        readFully(rec, buf);
+        readFully(rec, scratch, 0, 4);
         recordVersion = rec.getVersion();
-        if (buf[0] != 2) {
+        if (scratch[0] != 2) {
             throw new IOException("unexpected handshake"
-                    + " message type: " + (buf[0] & 0xFF));
+                    + " message type: " + (scratch[0] & 0xFF));
         }
-        buf = new byte[dec24be(buf, 1)];
+        int len = dec24be(scratch, 1);
 
         /**
          * Read the complete message in RAM.
          */
-        readFully(rec, buf);
+        byte[] buf = message(scratch, len);
+        readFully(rec, buf, 0, len);
         int ptr = 0;
 
         /**
          * The protocol version which we will use.
          */
-        if (ptr + 2 > buf.length) {
+        if (ptr + 2 > len) {
             throw new IOException("invalid ServerHello");
         }
         protocolVersion = dec16be(buf, 0);
@@ -59,7 +84,7 @@ public class ServerHello {
          * The server random begins with the server's notion
          * of the current time.
          */
-        if (ptr + 32 > buf.length) {
+        if (ptr + 32 > len) {
             throw new IOException("invalid ServerHello");
         }
         serverTime = 1000L * (dec32be(buf, ptr) & 0xFFFFFFFFL);
@@ -68,7 +93,7 @@ public class ServerHello {
 			/*
              * We skip the session ID.
 			 */
-        if (ptr + 1 > buf.length) {
+        if (ptr + 1 > len) {
             throw new IOException("invalid ServerHello");
         }
         ptr += 1 + (buf[ptr] & 0xFF);
@@ -76,7 +101,7 @@ public class ServerHello {
 			/*
              * The cipher suite and compression follow.
 			 */
-        if (ptr + 3 > buf.length) {
+        if (ptr + 3 > len) {
             throw new IOException("invalid ServerHello");
         }
         cipherSuite = dec16be(buf, ptr);
@@ -85,53 +110,59 @@ public class ServerHello {
         /**
          * The ServerHello could include some extensions here, which we ignore.
          */
+        if (helloOnly) {
+            return;
+        }
 
         /**
          * We now read a few extra messages, until we reach the server's Certificate message, or ServerHelloDone.
          */
         for (; ; ) {
-            buf = new byte[4];
-            readFully(rec, buf);
-            int mt = buf[0] & 0xFF;
-            buf = new byte[dec24be(buf, 1)];
-            readFully(rec, buf);
-            switch (mt) {
-                case 11:
-                    processCertificate(buf);
-                    return;
-                case 14:
-                    // ServerHelloDone
-                    return;
+            readFully(rec, scratch, 0, 4);
+            int mt = scratch[0] & 0xFF;
+            len = dec24be(scratch, 1);
+            buf = message(scratch, len);
+            if (mt == 11) {
+                ScanEvents.Phase fetch = isa == null ? ScanEvents.Phase.NONE
+                        : ScanEvents.beginPhase(ScanEvents.CERTIFICATE_FETCH, isa, version, 1);
+                try {
+                    readFully(rec, buf, 0, len);
+                    processCertificate(buf, len);
+                } finally {
+                    fetch.done();
+                }
+                return;
+            }
+            readFully(rec, buf, 0, len);
+            if (mt == 14) {
+                // ServerHelloDone
+                return;
             }
         }
     }
 
-    private void processCertificate(byte[] buf) {
-        if (buf.length <= 6) {
+    /**
+     * The pooled scratch buffer if the message fits in it, otherwise
+     * (e.g. long certificate chains) a new array.
+     */
+    private static byte[] message(byte[] scratch, int len) {
+        return len <= scratch.length ? scratch : new byte[len];
+    }
+
+    private void processCertificate(byte[] buf, int len) {
+        if (len <= 6) {
             return;
         }
         int len1 = dec24be(buf, 0);
-        if (len1 != buf.length - 3) {
+        if (len1 != len - 3) {
             return;
         }
         int len2 = dec24be(buf, 3);
-        if (len2 > buf.length - 6) {
-            return;
-        }
-        byte[] ec = new byte[len2];
-        System.arraycopy(buf, 6, ec, 0, len2);
-        try {
-            CertificateFactory cf =
-                    CertificateFactory.getInstance("X.509");
-            X509Certificate xc =
-                    (X509Certificate) cf.generateCertificate(
-                            new ByteArrayInputStream(ec));
-            serverCertName =
-                    xc.getSubjectX500Principal().toString();
-            serverCertHash = doSHA1(ec);
-        } catch (CertificateException e) {
-            // ignored
+        if (len2 > len - 6) {
             return;
         }
+        CertificateCache.Description cert = CertificateCache.INSTANCE.get(buf, 6, len2);
+        serverCertName = cert.name;
+        serverCertHash = cert.hash;
     }
 }
@@ -0,0 +1,140 @@
+package com.adioss.security.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.adioss.security.test.Utils.dec16be;
+import static com.adioss.security.test.Utils.dec24be;
+
+/*
+ * Incremental framing of the records sent by a SSLv3/TLS server. The
+ * answer is complete when the handshake messages contain a ServerHello
+ * followed by a Certificate or a ServerHelloDone, which is exactly what
+ * the ServerHello parser reads; in hello-only mode, the ServerHello
+ * alone is enough. From the first record holding the header of the
+ * Certificate message until the decoder is released, the probe is in
+ * a CERTIFICATE_FETCH phase of the scan of its target.
+ */
+class ServerHelloDecoder implements ResponseDecoder<ServerHello> {
+    private final boolean helloOnly;
+    private final InetSocketAddress isa;
+    private final int version;
+    private ScanEvents.Phase fetch;
+    private byte[] data;
+    private int len;
+    private int recordPtr;
+    private byte[] handshake;
+    private int handshakeLen;
+    private int messagePtr;
+
+    ServerHelloDecoder(boolean helloOnly) {
+        this(helloOnly, null, 0);
+    }
+
+    /**
+     * A decoder of the answer of isa (null for no phase event) to a
+     * hello of that version.
+     */
+    ServerHelloDecoder(boolean helloOnly, InetSocketAddress isa, int version) {
+        this.helloOnly = helloOnly;
+        this.isa = isa;
+        this.version = version;
+    }
+
+    @Override
+    public boolean feed(ByteBuffer src) throws IOException {
+        if (data == null) {
+            data = BufferPool.acquire();
+            handshake = BufferPool.acquire();
+        }
+        data = ensure(data, len + src.remaining());
+        int n = src.remaining();
+        src.get(data, len, n);
+        len += n;
+
+        /*
+         * Extract the payload of all the complete records; alert
+         * records are skipped, as InputRecord does.
+         */
+        while (len - recordPtr >= 5) {
+            int type = data[recordPtr] & 0xFF;
+            int recordLen = dec16be(data, recordPtr + 3);
+            if (type != Constants.HANDSHAKE && type != Constants.ALERT) {
+                throw new IOException("unexpected record type: " + type);
+            }
+            if (recordLen > Constants.MAX_RECORD_LEN) {
+                throw new IOException("oversized record: " + recordLen);
+            }
+            if (len - recordPtr - 5 < recordLen) {
+                break;
+            }
+            if (type == Constants.HANDSHAKE) {
+                handshake = ensure(handshake, handshakeLen + recordLen);
+                System.arraycopy(data, recordPtr + 5, handshake, handshakeLen, recordLen);
+                handshakeLen += recordLen;
+            }
+            recordPtr += 5 + recordLen;
+        }
+
+        /*
+         * Walk the complete handshake messages.
+         */
+        while (handshakeLen - messagePtr >= 4) {
+            int mt = handshake[messagePtr] & 0xFF;
+            int messageLen = dec24be(handshake, messagePtr + 1);
+            if (mt == 11 && messagePtr > 0 && fetch == null && isa != null) {
+                fetch = ScanEvents.beginPhase(ScanEvents.CERTIFICATE_FETCH, isa, version, 1);
+            }
+            if (handshakeLen - messagePtr - 4 < messageLen) {
+                return false;
+            }
+            if (messagePtr == 0) {
+                if (mt != 2) {
+                    throw new IOException("unexpected handshake"
+                            + " message type: " + mt);
+                }
+                if (helloOnly) {
+                    return true;
+                }
+            } else if (mt == 11 || mt == 14) {
+                return true;
+            }
+            messagePtr += 4 + messageLen;
+        }
+        return false;
+    }
+
+    @Override
+    public ServerHello decode() throws IOException {
+        return new ServerHello(new ByteArrayInputStream(data, 0, recordPtr), helloOnly);
+    }
+
+    @Override
+    public void release() {
+        if (fetch != null) {
+            fetch.done();
+            fetch = null;
+        }
+        BufferPool.release(data);
+        BufferPool.release(handshake);
+        data = null;
+        handshake = null;
+    }
+
+    /**
+     * buf if it holds capacity bytes, otherwise a larger copy; buf then
+     * goes back to the BufferPool. The copy is at least twice the size
+     * of a pooled buffer, so release() never pools it.
+     */
+    static byte[] ensure(byte[] buf, int capacity) {
+        if (capacity <= buf.length) {
+            return buf;
+        }
+        byte[] grown = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+        BufferPool.release(buf);
+        return grown;
+    }
+}
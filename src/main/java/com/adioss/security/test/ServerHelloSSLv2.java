@@ -1,11 +1,7 @@
 package com.adioss.security.test;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 
 import static com.adioss.security.test.Utils.*;
 
@@ -22,9 +18,17 @@ public class ServerHelloSSLv2 {
     String serverCertHash;
 
     ServerHelloSSLv2(InputStream in) throws IOException {
+        byte[] buf = BufferPool.acquire();
+        try {
+            decode(in, buf);
+        } finally {
+            BufferPool.release(buf);
+        }
+    }
+
+    private void decode(InputStream in, byte[] buf) throws IOException {
         // Record length
-        byte[] buf = new byte[2];
-        readFully(in, buf);
+        readFully(in, buf, 0, 2);
         int len = dec16be(buf, 0);
         if ((len & 0x8000) == 0) {
             throw new IOException("not a SSLv2 record");
@@ -33,8 +37,7 @@ public class ServerHelloSSLv2 {
         if (len < 11) {
             throw new IOException("not a SSLv2 server hello");
         }
-        buf = new byte[11];
-        readFully(in, buf);
+        readFully(in, buf, 0, 11);
         if (buf[0] != 0x04) {
             throw new IOException("not a SSLv2 server hello");
         }
@@ -47,23 +50,16 @@ public class ServerHelloSSLv2 {
         if (csLen == 0 || csLen % 3 != 0) {
             throw new IOException("not a SSLv2 server hello");
         }
-        byte[] cert = new byte[certLen];
-        readFully(in, cert);
-        byte[] cs = new byte[csLen];
-        readFully(in, cs);
-        byte[] connId = new byte[connIdLen];
-        readFully(in, connId);
+        // Certificate, cipher specs and connection ID, in one read
+        int rest = len - 11;
+        byte[] data = rest <= buf.length ? buf : new byte[rest];
+        readFully(in, data, 0, rest);
         cipherSuites = new int[csLen / 3];
         for (int i = 0, j = 0; i < csLen; i += 3, j++) {
-            cipherSuites[j] = dec24be(cs, i);
-        }
-        try {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509Certificate xc = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(cert));
-            serverCertName = xc.getSubjectX500Principal().toString();
-            serverCertHash = doSHA1(cert);
-        } catch (CertificateException e) {
-            // ignored
+            cipherSuites[j] = dec24be(data, certLen + i);
         }
+        CertificateCache.Description entry = CertificateCache.INSTANCE.get(data, 0, certLen);
+        serverCertName = entry.name;
+        serverCertHash = entry.hash;
     }
 }
@@ -0,0 +1,46 @@
+package com.adioss.security.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.adioss.security.test.Utils.dec16be;
+
+/*
+ * Incremental framing of a SSLv2 SERVER HELLO: a single record whose
+ * length is given by its two-byte header.
+ */
+class ServerHelloSSLv2Decoder implements ResponseDecoder<ServerHelloSSLv2> {
+    private byte[] data;
+    private int len;
+
+    @Override
+    public boolean feed(ByteBuffer src) throws IOException {
+        if (data == null) {
+            data = BufferPool.acquire();
+        }
+        data = ServerHelloDecoder.ensure(data, len + src.remaining());
+        int n = src.remaining();
+        src.get(data, len, n);
+        len += n;
+        if (len < 2) {
+            return false;
+        }
+        int recordLen = dec16be(data, 0);
+        if ((recordLen & 0x8000) == 0) {
+            throw new IOException("not a SSLv2 record");
+        }
+        return len >= 2 + (recordLen & 0x7FFF);
+    }
+
+    @Override
+    public ServerHelloSSLv2 decode() throws IOException {
+        return new ServerHelloSSLv2(new ByteArrayInputStream(data, 0, len));
+    }
+
+    @Override
+    public void release() {
+        BufferPool.release(data);
+        data = null;
+    }
+}
@@ -0,0 +1,220 @@
+package com.adioss.security.test;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * A set of 16-bit cipher suite codes, as a 65536-bit bitmap. Union,
+ * difference, intersection tests and equality work on whole 64-bit
+ * words; iteration with nextSetBit() yields primitive ints in ascending
+ * order (the order of the TreeSet<Integer> it replaces). The Set view
+ * is there for the code that still works on collections.
+ */
+final class SuiteSet extends AbstractSet<Integer> {
+    private static final int WORDS = 65536 / 64;
+
+    private final long[] words = new long[WORDS];
+    private int size;
+
+    SuiteSet() {
+    }
+
+    SuiteSet(SuiteSet other) {
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+        size = other.size;
+    }
+
+    static SuiteSet of(Collection<Integer> suites) {
+        if (suites instanceof SuiteSet) {
+            return new SuiteSet((SuiteSet) suites);
+        }
+        SuiteSet set = new SuiteSet();
+        for (int suite : suites) {
+            set.add(suite);
+        }
+        return set;
+    }
+
+    boolean contains(int suite) {
+        return (suite & ~0xFFFF) == 0 && (words[suite >>> 6] & (1L << suite)) != 0;
+    }
+
+    boolean add(int suite) {
+        if ((suite & ~0xFFFF) != 0) {
+            throw new IllegalArgumentException(String.format("not a 16-bit suite: 0x%X", suite));
+        }
+        long bit = 1L << suite;
+        long w = words[suite >>> 6];
+        if ((w & bit) != 0) {
+            return false;
+        }
+        words[suite >>> 6] = w | bit;
+        size++;
+        return true;
+    }
+
+    boolean remove(int suite) {
+        if (!contains(suite)) {
+            return false;
+        }
+        words[suite >>> 6] &= ~(1L << suite);
+        size--;
+        return true;
+    }
+
+    /**
+     * Next suite at or after from, -1 if none.
+     */
+    int nextSetBit(int from) {
+        if (from >= 65536) {
+            return -1;
+        }
+        int i = from >>> 6;
+        long w = words[i] & (-1L << from);
+        for (; ; ) {
+            if (w != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(w);
+            }
+            if (++i == WORDS) {
+                return -1;
+            }
+            w = words[i];
+        }
+    }
+
+    /**
+     * this = this | other
+     */
+    void or(SuiteSet other) {
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            words[i] |= other.words[i];
+            n += Long.bitCount(words[i]);
+        }
+        size = n;
+    }
+
+    /**
+     * this = this & other
+     */
+    void and(SuiteSet other) {
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= other.words[i];
+            n += Long.bitCount(words[i]);
+        }
+        size = n;
+    }
+
+    /**
+     * this = this & ~other
+     */
+    void andNot(SuiteSet other) {
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= ~other.words[i];
+            n += Long.bitCount(words[i]);
+        }
+        size = n;
+    }
+
+    boolean intersects(SuiteSet other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int[] toIntArray() {
+        int[] r = new int[size];
+        int j = 0;
+        for (int s = nextSetBit(0); s >= 0; s = nextSetBit(s + 1)) {
+            r[j++] = s;
+        }
+        return r;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    @Override
+    public boolean add(Integer suite) {
+        return add(suite.intValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Integer && remove(((Integer) o).intValue());
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0L);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int next = nextSetBit(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = nextSetBit(next + 1);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                SuiteSet.this.remove(last);
+                last = -1;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SuiteSet) {
+            SuiteSet other = (SuiteSet) o;
+            return size == other.size && Arrays.equals(words, other.words);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Sum of the codes, as for any Set<Integer>.
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int s = nextSetBit(0); s >= 0; s = nextSetBit(s + 1)) {
+            h += s;
+        }
+        return h;
+    }
+}
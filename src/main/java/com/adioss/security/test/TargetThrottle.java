@@ -0,0 +1,413 @@
+package com.adioss.security.test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Per-target concurrency control, shared by all the scans of a run.
+ *
+ * Each target (address and port) has a window of probes in flight,
+ * managed like a TCP congestion window. It starts small and doubles
+ * every window's worth of answers (slow start) up to maxWindow, then
+ * grows by one per window (additive increase). A congestion signal
+ * halves it (multiplicative decrease): a timeout, a connection reset
+ * while connecting or in answer to a hello offering a suite which the
+ * target already chose, or an answer much slower than the fastest one
+ * seen from that target. Signals from probes started before the last
+ * decrease are ignored, so that one burst of resets halves the window
+ * once. A reset answering any other hello is the way some servers
+ * refuse it, and a refused connection tells a closed port: neither is
+ * a congestion signal.
+ * A target which resets connections when probed in parallel thus
+ * converges to the concurrency it handles, while robust targets get
+ * the full maxWindow.
+ *
+ * On top of that, each subnet (/24 in IPv4, /64 in IPv6) has a token
+ * bucket which caps the rate of new connections to it, whatever the
+ * number of targets of the batch within that subnet.
+ *
+ * Probes which failed on a congestion signal are retried, RETRIES
+ * times at most, once the window has shrunk: a throttled probe must
+ * not end an elimination early and hide supported suites.
+ *
+ * The state is guarded by a ReentrantLock rather than the monitor, so
+ * that virtual threads waiting in acquire() do not pin their carrier.
+ */
+final class TargetThrottle {
+    static final int RETRIES = 2;
+
+    private static final int INITIAL_WINDOW = 2;
+    private static final int MAX_TRACKED = 4096;
+    private static final long SLOW_ANSWER_NANOS = 100000000L;
+    private static final int SLOW_ANSWER_FACTOR = 4;
+
+    private final int maxWindow;
+    private final boolean adaptive;
+    private final double subnetRate;
+    private final double burst;
+    private final Map<InetSocketAddress, Window> windows = new Tracked<>();
+    private final Map<String, Bucket> buckets = new Tracked<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int congestions;
+    private int retries;
+
+    /**
+     * With adaptive, each target gets an AIMD window of at most
+     * maxWindow probes in flight; otherwise windows are fixed at
+     * maxWindow. subnetRate is in new connections per second and per
+     * subnet, 0 for no limit.
+     */
+    TargetThrottle(int maxWindow, boolean adaptive, double subnetRate) {
+        this.maxWindow = maxWindow;
+        this.adaptive = adaptive;
+        this.subnetRate = subnetRate;
+        this.burst = Math.max(1, subnetRate);
+    }
+
+    /*
+     * The right to run one probe, to give back with release().
+     */
+    static final class Permit {
+        final Window window;
+        final long startNanos;
+        final int epoch;
+
+        Permit(Window window, long startNanos, int epoch) {
+            this.window = window;
+            this.startNanos = startNanos;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * Whether a probe failure tells that the target may be throttling
+     * us: a timeout, or a reset while connecting (connected false) or in
+     * answer to a hello which the target has no reason to refuse
+     * (acceptedOffer, see isAcceptedOffer()).
+     */
+    static boolean isCongestion(IOException ioe, boolean connected, boolean acceptedOffer) {
+        if (ioe instanceof SocketTimeoutException) {
+            return true;
+        }
+        return isReset(ioe) && (!connected || acceptedOffer);
+    }
+
+    /**
+     * Whether the failure of a connected probe is the refusal of its
+     * hello: the connection closed, or reset when the hello offered no
+     * suite known to be accepted.
+     */
+    static boolean isRefusal(IOException ioe, boolean acceptedOffer) {
+        return ioe instanceof EOFException || (isReset(ioe) && !acceptedOffer);
+    }
+
+    /**
+     * Whether the peer reset the connection; a refused connection,
+     * or an unreachable host or port, is not a reset.
+     */
+    static boolean isReset(IOException ioe) {
+        return ioe instanceof SocketException && !(ioe instanceof ConnectException)
+                && !(ioe instanceof NoRouteToHostException) && !(ioe instanceof PortUnreachableException);
+    }
+
+    /**
+     * Wait for a permit; null if the deadline is reached (or the thread
+     * interrupted) first.
+     */
+    Permit acquire(InetSocketAddress isa, Deadline deadline) {
+        lock.lock();
+        try {
+            for (; ; ) {
+                long now = System.nanoTime();
+                Permit permit = tryAcquire(isa, now);
+                if (permit != null) {
+                    return permit;
+                }
+                long wait = deadline.remainingMillis();
+                long tokenWait = nanosUntilToken(isa, now);
+                if (tokenWait > 0) {
+                    wait = Math.min(wait, (tokenWait + 999999) / 1000000L);
+                }
+                if (wait == 0) {
+                    return null;
+                }
+                try {
+                    released.await(wait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A permit if the window of the target and the bucket of its subnet
+     * allow a new probe now, null otherwise.
+     */
+    Permit tryAcquire(InetSocketAddress isa, long now) {
+        lock.lock();
+        try {
+            Window window = windows.get(isa);
+            if (window == null) {
+                window = new Window(adaptive ? Math.min(INITIAL_WINDOW, maxWindow) : maxWindow, maxWindow);
+                windows.put(isa, window);
+            }
+            if (window.inFlight >= (int) window.size) {
+                return null;
+            }
+            if (subnetRate > 0) {
+                Bucket bucket = bucket(isa, now);
+                if (bucket.tokens < 1) {
+                    return null;
+                }
+                bucket.tokens--;
+            }
+            window.inFlight++;
+            return new Permit(window, now, window.epoch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back a permit; congested tells whether the probe failed on a
+     * congestion signal.
+     */
+    void release(Permit permit, boolean congested, long now) {
+        lock.lock();
+        try {
+            Window window = permit.window;
+            window.inFlight--;
+            long rtt = now - permit.startNanos;
+            if (!congested && window.minRtt > 0
+                    && rtt > SLOW_ANSWER_FACTOR * window.minRtt + SLOW_ANSWER_NANOS) {
+                congested = true;
+            }
+            if (!congested) {
+                window.minRtt = window.minRtt == 0 ? rtt : Math.min(window.minRtt, rtt);
+            }
+            if (adaptive) {
+                if (!congested) {
+                    window.increase();
+                } else if (permit.epoch == window.epoch) {
+                    window.decrease();
+                    congestions++;
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(Permit permit, boolean congested) {
+        release(permit, congested, System.nanoTime());
+    }
+
+    /**
+     * Record that the target answered a hello at that version by
+     * choosing that suite.
+     */
+    void accepted(InetSocketAddress isa, int version, int suite) {
+        lock.lock();
+        try {
+            Window window = windows.get(isa);
+            if (window == null) {
+                return;
+            }
+            if (window.accepted == null) {
+                window.accepted = new HashMap<>();
+            }
+            window.accepted.computeIfAbsent(version, v -> new SuiteSet()).add(suite);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a hello at that version offers a suite which the target
+     * already chose: it has no reason to refuse it.
+     */
+    boolean isAcceptedOffer(InetSocketAddress isa, int version, Collection<Integer> offered) {
+        lock.lock();
+        try {
+            Window window = windows.get(isa);
+            SuiteSet accepted = window == null || window.accepted == null ? null : window.accepted.get(version);
+            if (accepted == null) {
+                return false;
+            }
+            for (int suite : offered) {
+                if (accepted.contains(suite)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void retried() {
+        lock.lock();
+        try {
+            retries++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Window decreases so far, over all targets.
+     */
+    int congestions() {
+        lock.lock();
+        try {
+            return congestions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Probes sent again after a congestion signal.
+     */
+    int retries() {
+        lock.lock();
+        try {
+            return retries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Current window of a target (for tests and monitoring).
+     */
+    int window(InetSocketAddress isa) {
+        lock.lock();
+        try {
+            Window window = windows.get(isa);
+            return window == null ? 0 : (int) window.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Nanoseconds until the bucket of the subnet of isa has a token; 0
+     * when it has one or when subnets are not rate limited.
+     */
+    long nanosUntilToken(InetSocketAddress isa, long now) {
+        lock.lock();
+        try {
+            if (subnetRate <= 0) {
+                return 0;
+            }
+            Bucket bucket = bucket(isa, now);
+            if (bucket.tokens >= 1) {
+                return 0;
+            }
+            return (long) Math.ceil((1 - bucket.tokens) * 1e9 / subnetRate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Bucket bucket(InetSocketAddress isa, long now) {
+        String subnet = subnet(isa);
+        Bucket bucket = buckets.get(subnet);
+        if (bucket == null) {
+            bucket = new Bucket(burst, now);
+            buckets.put(subnet, bucket);
+        }
+        bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.refilled) * subnetRate / 1e9);
+        bucket.refilled = now;
+        return bucket;
+    }
+
+    static String subnet(InetSocketAddress isa) {
+        InetAddress address = isa.getAddress();
+        if (address == null) {
+            return isa.getHostString();
+        }
+        byte[] bytes = address.getAddress();
+        return Arrays.toString(Arrays.copyOf(bytes, bytes.length == 4 ? 3 : 8));
+    }
+
+    static final class Window {
+        final int maxSize;
+        double size;
+        double threshold;
+        int inFlight;
+        int epoch;
+        long minRtt;
+        Map<Integer, SuiteSet> accepted;
+
+        Window(int size, int maxSize) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.threshold = maxSize;
+        }
+
+        void increase() {
+            size = Math.min(maxSize, size + (size < threshold ? 1 : 1 / size));
+        }
+
+        void decrease() {
+            size = Math.max(1, size / 2);
+            threshold = size;
+            epoch++;
+        }
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long refilled;
+
+        Bucket(double tokens, long refilled) {
+            this.tokens = tokens;
+            this.refilled = refilled;
+        }
+    }
+
+    /*
+     * Least recently used entries are dropped past MAX_TRACKED targets,
+     * as long as they are idle: a batch does not keep the state of every
+     * host it has scanned.
+     */
+    private static final class Tracked<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        Tracked() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() <= MAX_TRACKED) {
+                return false;
+            }
+            V value = eldest.getValue();
+            return !(value instanceof Window) || ((Window) value).inFlight == 0;
+        }
+    }
+}
@@ -49,133 +49,188 @@ package com.adioss.security.test;/*
  * ----------------------------------------------------------------------
  */
 
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
-import static com.adioss.security.test.CipherSuiteUnion.CIPHER_SUITES;
+import static com.adioss.security.test.CipherSuiteUnion.*;
 import static com.adioss.security.test.Constants.*;
 import static com.adioss.security.test.Utils.*;
 
 public class TestSSLServer {
 
     static void usage() {
-        System.err.println("usage: TestSSLServer servername [ port ]");
+        System.err.println("usage: TestSSLServer [ options ] servername [ port ]");
+        System.err.println("       TestSSLServer [ options ] -batch file|-");
+        System.err.println("options:");
+        System.err.println("  -threads n   concurrent probes (default: 8, 256 with -nio)");
+        System.err.println("  -chunks n    parallel enumeration chunks per version (default: 4)");
+        System.err.println("  -nio         run all probes on one non-blocking selector thread");
+        System.err.println("  -virtual     run probes on virtual threads (Java 21+)");
+        System.err.println("  -helloonly   close probes after the ServerHello; one certificate per version");
+        System.err.println("  -speculative check that versions share the suites of the lowest one,");
+        System.err.println("               with a few probes, before enumerating them");
+        System.err.println("  -order       recover the server's cipher suite preference order");
+        System.err.println("  -compliance  only look for accepted suites banned by AssumptionManager");
+        System.err.println("  -adaptive    per-target AIMD control of the probes in flight, retry");
+        System.err.println("               the probes which the target reset or let time out");
+        System.err.println("  -subnetrate n at most n new connections per second to each /24 (/64)");
+        System.err.println("  -reset       close probes with a RST (SO_LINGER 0): no TIME_WAIT sockets");
+        System.err.println("  -bind addr   local address of the probe connections");
+        System.err.println("  -ports lo-hi local ports of the probe connections, used in turn");
+        System.err.println("  -sndbuf n    socket send buffer size of the probe connections");
+        System.err.println("  -rcvbuf n    socket receive buffer size of the probe connections");
+        System.err.println("  -jmx         register the scan metrics as MBean " + ScanMetrics.OBJECT_NAME);
+        System.err.println("  -metrics p   serve the scan metrics at http://127.0.0.1:p/metrics");
+        System.err.println("               (Prometheus text format)");
+        System.err.println("  -ctimeout ms connect timeout of each probe (default: 5000, 0 = none)");
+        System.err.println("  -rtimeout ms read timeout of each probe (default: 10000, 0 = none)");
+        System.err.println("  -deadline ms total time budget per host; partial results are reported");
+        System.err.println("  -batch file  scan the host[:port] targets of file (- for stdin)");
+        System.err.println("  -hosts n     concurrent hosts in batch mode (default: 32)");
+        System.err.println("  -out dir     batch mode: write one result file per host in dir");
+        System.err.println("  -journal f   batch mode: record progress in f, and resume from it");
+        System.err.println("  -json        stream results as NDJSON events (one JSON object per line)");
         System.exit(1);
     }
 
     public static void main(String[] args) throws IOException {
-        if (args.length == 0 || args.length > 2) {
-            usage();
+        ScanOptions options = parseOptions(args);
+        if (options.virtual && !ScanExecutors.isVirtualAvailable()) {
+            System.err.println("virtual threads need Java 21 or later");
+            System.exit(1);
         }
-        String name = args[0];
-        int port = 443;
-        if (args.length == 2) {
-            try {
-                port = Integer.parseInt(args[1]);
-            } catch (NumberFormatException nfe) {
-                usage();
+
+        NioProbeEngine nioEngine = null;
+        ExecutorService executor = null;
+        Function<InetSocketAddress, ScanReport> scanner;
+        ConnectionFactory connections = options.connections();
+        NdjsonWriter json = options.json ? new NdjsonWriter(System.out) : null;
+        ScanJournal journal = null;
+        if (options.journal != null) {
+            journal = ScanJournal.open(Paths.get(options.journal), json != null ? json : ScanListener.NONE);
+            if (journal.finishedCount() > 0) {
+                System.err.println("resuming: " + journal.finishedCount() + " host(s) already done");
             }
-            if (port <= 0 || port > 65535) {
-                usage();
+        }
+        ScanListener listener = journal != null ? journal : json != null ? json : ScanListener.NONE;
+        if (options.nio) {
+            NioProbeEngine engine = new NioProbeEngine(options.concurrency(),
+                    options.connectTimeout, options.readTimeout, options.helloOnly, options.throttle(), connections);
+            scanner = isa -> engine.scan(isa, options.chunks, options.deadline, options.speculative,
+                    options.order, listener).join();
+            nioEngine = engine;
+        } else {
+            executor = options.virtual ? ScanExecutors.virtual(options.concurrency())
+                    : ScanExecutors.platform(options.concurrency());
+            Prober prober = new Prober(options.connectTimeout, options.readTimeout, options.helloOnly)
+                    .withThrottle(options.throttle()).withTransport(connections);
+            if (options.compliance) {
+                scanner = new ComplianceEngine(executor, prober, options.chunks, options.deadline,
+                        listener)::scan;
+            } else {
+                scanner = new ScanEngine(executor, prober, options.chunks, options.deadline,
+                        options.speculative, options.order, listener)::scan;
             }
         }
-        InetSocketAddress inetSocketAddress = new InetSocketAddress(name, port);
 
-        Set<Integer> protocolVersions = new TreeSet<>();
-        boolean compress = false;
-        for (int v = 0x0300; v <= 0x0303; v++) {
-            ServerHello serverHello = connect(inetSocketAddress, v, CIPHER_SUITES.keySet());
-            if (serverHello == null) {
-                continue;
+        scanner = ScanMetrics.INSTANCE.instrument(scanner);
+        HttpServer metricsServer = null;
+        try {
+            if (options.jmx) {
+                try {
+                    ScanMetrics.register();
+                } catch (JMException jme) {
+                    System.err.println("could not register the metrics MBean: " + jme);
+                }
             }
-            protocolVersions.add(serverHello.protocolVersion);
-            if (serverHello.compression == 1) {
-                compress = true;
+            if (options.metricsPort >= 0) {
+                metricsServer = ScanMetrics.serve(options.metricsPort);
+                System.err.println("metrics at http://127.0.0.1:" + metricsServer.getAddress().getPort()
+                        + "/metrics");
             }
-        }
-
-        ServerHelloSSLv2 serverHelloSSLv2 = connectV2(inetSocketAddress);
-
-        if (serverHelloSSLv2 != null) {
-            protocolVersions.add(0x0200);
-        }
-
-        if (protocolVersions.size() == 0) {
-            System.out.println("No SSL/TLS server at " + inetSocketAddress);
-            System.exit(1);
-        }
-        System.out.print("Supported versions:");
-        for (int protocolVersion : protocolVersions) {
-            System.out.print(" ");
-            System.out.print(versionString(protocolVersion));
-        }
-        System.out.println();
-        System.out.println("Deflate compression: " + (compress ? "YES" : "no"));
-
-        System.out.println("Supported cipher suites" + " (ORDER IS NOT SIGNIFICANT):");
-        Set<Integer> lastSuppCS = null;
-        Map<Integer, Set<Integer>> supportedCipherSuites = new TreeMap<>();
-        Set<String> certID = new TreeSet<>();
-
-        if (serverHelloSSLv2 != null) {
-            System.out.println("  " + versionString(0x0200));
-            Set<Integer> vc2 = new TreeSet<>();
-            for (int cipherSuite : serverHelloSSLv2.cipherSuites) {
-                vc2.add(cipherSuite);
+            if (options.batch != null) {
+                List<InetSocketAddress> targets = null;
+                try {
+                    targets = BatchScanner.readTargets(options.batch);
+                } catch (IllegalArgumentException iae) {
+                    System.err.println(iae.getMessage());
+                    System.exit(1);
+                }
+                BatchScanner batch;
+                if (json != null) {
+                    batch = new BatchScanner(scanner, options.hosts, json);
+                } else {
+                    Path outDir = options.outDir == null ? null : Paths.get(options.outDir);
+                    batch = new BatchScanner(scanner, options.hosts, System.out, outDir);
+                }
+                if (journal != null) {
+                    batch = batch.withJournal(journal);
+                }
+                batch.scanAll(targets);
+                if (connections.isTuned()) {
+                    System.err.println(connections.counters());
+                }
+                return;
             }
-            for (int c : vc2) {
-                System.out.println("     " + cipherSuiteStringV2(c));
+            InetSocketAddress inetSocketAddress = new InetSocketAddress(options.name, options.port);
+            ScanReport report = scanner.apply(inetSocketAddress);
+            if (json != null) {
+                json.done(report);
+                if (report.isEmpty()) {
+                    System.exit(1);
+                }
+            } else {
+                if (report.isEmpty()) {
+                    System.out.println((report.incomplete ? "No answer before the scan deadline from "
+                            : "No SSL/TLS server at ") + inetSocketAddress);
+                    System.exit(1);
+                }
+                report.print(System.out);
             }
-            supportedCipherSuites.put(0x0200, vc2);
-            if (serverHelloSSLv2.serverCertName != null) {
-                certID.add(serverHelloSSLv2.serverCertHash + ": " + serverHelloSSLv2.serverCertName);
+            System.err.println(report.connectionsSaved + " connection(s) saved by the probe cache");
+            if (connections.isTuned()) {
+                System.err.println(connections.counters());
             }
-        }
-
-        for (int protocolVersion : protocolVersions) {
-            if (protocolVersion == 0x0200) {
-                continue;
+        } finally {
+            if (json != null && json.checkError()) {
+                System.err.println("error writing the NDJSON output");
             }
-            Set<Integer> vsc = supportedSuites(inetSocketAddress, protocolVersion, certID);
-            supportedCipherSuites.put(protocolVersion, vsc);
-            if (lastSuppCS == null || !lastSuppCS.equals(vsc)) {
-                System.out.println("  " + versionString(protocolVersion));
-                for (int c : vsc) {
-                    System.out.println("     " + cipherSuiteString(c));
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ioe) {
+                    System.err.println("error writing the journal: " + ioe);
                 }
-                lastSuppCS = vsc;
-            } else {
-                System.out.println("  (" + versionString(protocolVersion) + ": idem)");
             }
-        }
-        System.out.println("----------------------");
-        if (certID.size() == 0) {
-            System.out.println("No server certificate !");
-        } else {
-            System.out.println("Server certificate(s):");
-            for (String cc : certID) {
-                System.out.println("  " + cc);
+            if (metricsServer != null) {
+                metricsServer.stop(0);
             }
-        }
-        System.out.println("----------------------");
-        int agMaxStrength = STRONG;
-        int agMinStrength = STRONG;
-        boolean vulnBEAST = false;
-        for (int v : protocolVersions) {
-            Set<Integer> vsc = supportedCipherSuites.get(v);
-            agMaxStrength = Math.min(maxStrength(vsc), agMaxStrength);
-            agMinStrength = Math.min(minStrength(vsc), agMinStrength);
-            if (!vulnBEAST) {
-                vulnBEAST = testBEAST(inetSocketAddress, v, vsc);
+            if (nioEngine != null) {
+                nioEngine.close();
+            }
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
-        System.out.println("Minimal encryption strength:     " + strengthString(agMinStrength));
-        System.out.println("Achievable encryption strength:  " + strengthString(agMaxStrength));
-        System.out.println("BEAST status: " + (vulnBEAST ? "vulnerable" : "protected"));
-        System.out.println("CRIME status: " + (compress ? "vulnerable" : "protected"));
+    }
+
+    static ScanOptions parseOptions(String[] args) {
+        try {
+            return ScanOptions.parse(args);
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            usage();
+            return null;
+        }
     }
 
     /**
@@ -183,14 +238,25 @@ public class TestSSLServer {
      * repeatedly contacting the server, each time removing from our
      * list of supported suites the suite which the server just
      * selected. We keep on until the server can no longer respond
-     * to us with a ServerHello.
+     * to us with a ServerHello. Suites and certificates found go to the
+     * report as they come.
+     */
+    static SuiteSet supportedSuites(Prober prober, InetSocketAddress isa, int version, ScanReport report) {
+        return supportedSuites(prober, isa, version, ALL_SUITES, report);
+    }
+
+    /**
+     * Same elimination as above, restricted to the given candidate
+     * suites. The result is the intersection of the candidates with
+     * the server's supported suites, hence disjoint candidate lists
+     * can be enumerated independently and their results merged.
      */
-    static Set<Integer> supportedSuites(InetSocketAddress isa, int version,
-                                        Set<String> serverCertID) {
-        Set<Integer> cs = new TreeSet<>(CIPHER_SUITES.keySet());
-        Set<Integer> rs = new TreeSet<>();
+    static SuiteSet supportedSuites(Prober prober, InetSocketAddress isa, int version,
+                                    SuiteSet candidates, ScanReport report) {
+        SuiteSet cs = new SuiteSet(candidates);
+        SuiteSet rs = new SuiteSet();
         for (; ; ) {
-            ServerHello sh = connect(isa, version, cs);
+            ServerHello sh = prober.connect(isa, version, cs);
             if (sh == null) {
                 break;
             }
@@ -203,15 +269,130 @@ public class TestSSLServer {
             }
             cs.remove(sh.cipherSuite);
             rs.add(sh.cipherSuite);
+            report.addSuite(version, sh.cipherSuite);
             if (sh.serverCertName != null) {
-                serverCertID.add(sh.serverCertHash
+                report.addCertificate(sh.serverCertHash
                         + ": " + sh.serverCertName);
             }
         }
         return rs;
     }
 
-    static int minStrength(Set<Integer> supp) {
+    /**
+     * Replay the elimination steps over the candidates which the probe
+     * cache can already answer: the suites chosen by the server move
+     * from candidates to the returned set, without any connection.
+     */
+    static SuiteSet replayCached(ProbeCache cache, int version, SuiteSet candidates, boolean helloOnly,
+                                 ScanReport report) {
+        SuiteSet rs = new SuiteSet();
+        for (; ; ) {
+            ServerHello sh = cache.lookup(version, candidates, helloOnly);
+            if (sh == null || !candidates.contains(sh.cipherSuite)) {
+                return rs;
+            }
+            candidates.remove(sh.cipherSuite);
+            rs.add(sh.cipherSuite);
+            report.addSuite(version, sh.cipherSuite);
+            if (sh.serverCertName != null) {
+                report.addCertificate(sh.serverCertHash + ": " + sh.serverCertName);
+            }
+        }
+    }
+
+    /**
+     * Probes which check, at another version, the hypothesis that the
+     * server supports exactly the suites of base. The refusal probe
+     * offers all the other known suites and must be refused (null when
+     * base holds them all). Each confirmation probe offers the base
+     * suites of one strength class, CBC or not, and must be answered
+     * with one of them. This is far fewer probes than an elimination,
+     * but the second part is only a spot check that no base suite was
+     * dropped: enough for the strength and BEAST verdicts, not a proof
+     * that the lists are equal.
+     */
+    static SuiteSet refusalProbe(SuiteSet base) {
+        SuiteSet others = new SuiteSet(ALL_SUITES);
+        others.andNot(base);
+        return others.isEmpty() ? null : others;
+    }
+
+    static List<SuiteSet> confirmationProbes(SuiteSet base) {
+        List<SuiteSet> probes = new ArrayList<>();
+        for (int strength = CLEAR; strength <= STRONG; strength++) {
+            SuiteSet cbc = new SuiteSet(base);
+            cbc.and(SUITES_BY_STRENGTH[strength]);
+            SuiteSet stream = new SuiteSet(cbc);
+            cbc.and(CBC_SUITES);
+            stream.andNot(CBC_SUITES);
+            if (!cbc.isEmpty()) {
+                probes.add(cbc);
+            }
+            if (!stream.isEmpty()) {
+                probes.add(stream);
+            }
+        }
+        return probes;
+    }
+
+    /**
+     * Whether the server answer to a confirmation probe matches the
+     * hypothesis: a refusal when refused is true, otherwise one of
+     * the offered suites.
+     */
+    static boolean confirms(ServerHello sh, SuiteSet offered, boolean refused, ScanReport report) {
+        if (sh == null) {
+            return refused;
+        }
+        if (sh.serverCertName != null) {
+            report.addCertificate(sh.serverCertHash + ": " + sh.serverCertName);
+        }
+        return !refused && offered.contains(sh.cipherSuite);
+    }
+
+    /**
+     * Split the candidate suites into (at most) n disjoint chunks.
+     * Suites are dealt round-robin so that the ranges which servers
+     * usually support (e.g. 0x00xx and 0xC0xx) spread over all chunks.
+     */
+    static List<SuiteSet> splitSuites(SuiteSet candidates, int n) {
+        List<SuiteSet> chunks = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, candidates.size()); i++) {
+            chunks.add(new SuiteSet());
+        }
+        int i = 0;
+        for (int suite = candidates.nextSetBit(0); suite >= 0; suite = candidates.nextSetBit(suite + 1)) {
+            chunks.get(i++ % chunks.size()).add(suite);
+        }
+        return chunks;
+    }
+
+    /**
+     * Lowest strength among the supported suites (STRONG if none is
+     * known), checked one strength class at a time.
+     */
+    static int minStrength(SuiteSet supp) {
+        for (int strength = CLEAR; strength < STRONG; strength++) {
+            if (supp.intersects(SUITES_BY_STRENGTH[strength])) {
+                return strength;
+            }
+        }
+        return STRONG;
+    }
+
+    static int maxStrength(SuiteSet supp) {
+        for (int strength = STRONG; strength > CLEAR; strength--) {
+            if (supp.intersects(SUITES_BY_STRENGTH[strength])) {
+                return strength;
+            }
+        }
+        return CLEAR;
+    }
+
+    /**
+     * Same as above, for SSLv2 suites (which have 24-bit codes).
+     */
+    static int minStrength(Collection<Integer> supp) {
         int m = STRONG;
         for (int suite : supp) {
             CipherSuite cs = CIPHER_SUITES.get(suite);
@@ -225,7 +406,7 @@ public class TestSSLServer {
         return m;
     }
 
-    static int maxStrength(Set<Integer> supp) {
+    static int maxStrength(Collection<Integer> supp) {
         int m = CLEAR;
         for (int suite : supp) {
             CipherSuite cs = CIPHER_SUITES.get(suite);
@@ -239,8 +420,8 @@ public class TestSSLServer {
         return m;
     }
 
-    static boolean testBEAST(InetSocketAddress isa,
-                             int version, Set<Integer> supp) {
+    static boolean testBEAST(Prober prober, InetSocketAddress isa,
+                             int version, SuiteSet supp) {
         /**
          * TLS 1.1+ is not vulnerable to BEAST.
          * We do not test SSLv2 either.
@@ -256,32 +437,35 @@ public class TestSSLServer {
          * it chooses RC4 over CBC streams when given the choice.
          * We only consider strong cipher suites here.
          */
-        List<Integer> strongCBC = new ArrayList<>();
-        List<Integer> strongStream = new ArrayList<>();
-        for (int suite : supp) {
-            CipherSuite cs = CIPHER_SUITES.get(suite);
-            if (cs == null) {
-                continue;
-            }
-            if (cs.strength < STRONG) {
-                continue;
-            }
-            if (cs.isCBC) {
-                strongCBC.add(suite);
-            } else {
-                strongStream.add(suite);
-            }
-        }
-        if (strongCBC.size() == 0) {
+        SuiteSet strongCBC = strongSuites(supp, true);
+        SuiteSet strongStream = strongSuites(supp, false);
+        if (strongCBC.isEmpty()) {
             return false;
         }
-        if (strongStream.size() == 0) {
+        if (strongStream.isEmpty()) {
             return true;
         }
-        List<Integer> ns = new ArrayList<>(strongCBC);
-        ns.addAll(strongStream);
-        ServerHello serverHello = connect(isa, version, ns);
-        return !strongStream.contains(serverHello.cipherSuite);
+        SuiteSet ns = new SuiteSet(strongCBC);
+        ns.or(strongStream);
+        ScanEvents.Phase phase = ScanEvents.beginPhase(ScanEvents.BEAST_TEST, isa, version, 1);
+        ServerHello serverHello = prober.connect(isa, version, ns);
+        phase.done();
+        return serverHello != null && !strongStream.contains(serverHello.cipherSuite);
+    }
+
+    /**
+     * Get the strong suites of the provided set which use (or do not
+     * use) a CBC cipher.
+     */
+    static SuiteSet strongSuites(SuiteSet supp, boolean isCBC) {
+        SuiteSet r = new SuiteSet(supp);
+        r.and(SUITES_BY_STRENGTH[STRONG]);
+        if (isCBC) {
+            r.and(CBC_SUITES);
+        } else {
+            r.andNot(CBC_SUITES);
+        }
+        return r;
     }
 
     static String versionString(int version) {
@@ -296,71 +480,6 @@ public class TestSSLServer {
         }
     }
 
-    /**
-     * Connect to the server, send a ClientHello, and decode the
-     * response (ServerHello). On error, null is returned.
-     */
-    static ServerHello connect(InetSocketAddress isa, int version, Collection<Integer> cipherSuites) {
-        Socket socket = null;
-        try {
-            socket = new Socket();
-            try {
-                socket.connect(isa);
-            } catch (IOException ioe) {
-                System.err.println("could not connect to " + isa + ": " + ioe.toString());
-                return null;
-            }
-            byte[] ch = makeClientHello(version, cipherSuites);
-            OutputRecord orec = new OutputRecord(socket.getOutputStream());
-            orec.setType(HANDSHAKE);
-            orec.setVersion(version);
-            orec.write(ch);
-            orec.flush();
-            return new ServerHello(socket.getInputStream());
-        } catch (IOException ioe) {
-            // ignored
-        } finally {
-            try {
-                if (socket != null) {
-                    socket.close();
-                }
-            } catch (IOException ioe) {
-                // ignored
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Connect to the server, send a SSLv2 CLIENT HELLO, and decode
-     * the response (SERVER HELLO). On error, null is returned.
-     */
-    static ServerHelloSSLv2 connectV2(InetSocketAddress isa) {
-        Socket socket = null;
-        try {
-            socket = new Socket();
-            try {
-                socket.connect(isa);
-            } catch (IOException ioe) {
-                System.err.println("could not connect to " + isa + ": " + ioe.toString());
-                return null;
-            }
-            socket.getOutputStream().write(SSL2_CLIENT_HELLO);
-            return new ServerHelloSSLv2(socket.getInputStream());
-        } catch (IOException ioe) {
-            // ignored
-        } finally {
-            try {
-                if (socket != null) {
-                    socket.close();
-                }
-            } catch (IOException ioe) {
-                // ignored
-            }
-        }
-        return null;
-    }
-
     /*
      * Build a ClientHello message, with the specified maximum
      * supported version, and list of cipher suites.
@@ -462,9 +581,9 @@ public class TestSSLServer {
     }
 
     static String cipherSuiteString(int suite) {
-        CipherSuite cs = CIPHER_SUITES.get(suite);
+        CipherSuite cs = SUITES_BY_CODE[suite & 0xFFFF];
         if (cs == null) {
-            return String.format("UNKNOWN_SUITE:0x%04X", cs);
+            return String.format("UNKNOWN_SUITE:0x%04X", suite);
         } else {
             return cs.name;
         }
@@ -0,0 +1,35 @@
+package com.adioss.security.test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/*
+ * How Prober reaches a server: one byte stream each way per probe.
+ * ConnectionFactory opens TCP connections; the tests' MemoryTransport
+ * answers from in-process fake servers, so that the scan algorithms
+ * can be run (and benchmarked, see MemoryScanBenchmark) without any
+ * network. NioProbeEngine does not go through a Transport: it drives
+ * non-blocking SocketChannels from ConnectionFactory.
+ */
+interface Transport {
+
+    /**
+     * Open a connection; timeouts are in milliseconds, 0 meaning none.
+     */
+    Connection connect(InetSocketAddress isa, int connectTimeout, int readTimeout) throws IOException;
+
+    interface Connection extends Closeable {
+        InputStream getInputStream() throws IOException;
+
+        OutputStream getOutputStream() throws IOException;
+
+        /**
+         * Close the connection; errors are ignored.
+         */
+        @Override
+        void close();
+    }
+}
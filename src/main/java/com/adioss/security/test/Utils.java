@@ -5,9 +5,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Formatter;
 
 public class Utils {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * MessageDigest instances are not thread-safe, and looking one up
+     * goes through the provider list; a few are kept for reuse.
+     */
+    private static final InstancePool<MessageDigest> SHA1 = new InstancePool<>(() -> {
+        try {
+            return MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new Error(nsae);
+        }
+    }, 16);
+
     static void readFully(InputStream in, byte[] buf)
             throws IOException {
         readFully(in, buf, 0, buf.length);
@@ -70,17 +83,15 @@ public class Utils {
     }
 
     static String doSHA1(byte[] buf, int off, int len) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA1");
-            md.update(buf, off, len);
-            byte[] hv = md.digest();
-            Formatter f = new Formatter();
-            for (byte b : hv) {
-                f.format("%02x", b & 0xFF);
-            }
-            return f.toString();
-        } catch (NoSuchAlgorithmException nsae) {
-            throw new Error(nsae);
+        MessageDigest md = SHA1.acquire();
+        md.update(buf, off, len);
+        byte[] hv = md.digest();
+        SHA1.release(md);
+        char[] hex = new char[hv.length * 2];
+        for (int i = 0; i < hv.length; i++) {
+            hex[2 * i] = HEX[(hv[i] >>> 4) & 0x0F];
+            hex[2 * i + 1] = HEX[hv[i] & 0x0F];
         }
+        return new String(hex);
     }
 }
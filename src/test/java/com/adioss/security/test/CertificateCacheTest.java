@@ -0,0 +1,36 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Certificates described by CertificateCache, from many threads at once.
+ */
+public class CertificateCacheTest extends TestCase {
+
+    public void testConcurrentLookups() throws Exception {
+        byte[] der = FakeTlsServer.certificate();
+        String hash = Utils.doSHA1(der);
+        CertificateCache cache = new CertificateCache(4);
+        ExecutorService executor = ScanExecutors.platform(8);
+        try {
+            List<Future<CertificateCache.Description>> lookups = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                lookups.add(executor.submit(() -> cache.get(der, 0, der.length)));
+            }
+            for (Future<CertificateCache.Description> lookup : lookups) {
+                CertificateCache.Description cert = lookup.get();
+                assertTrue(cert.name.contains("fake.example.org"));
+                assertEquals(hash, cert.hash);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(64, cache.hits.get() + cache.misses.get());
+        assertNull(cache.get(new byte[] { 0x30, 0x00 }, 0, 2).name);
+    }
+}
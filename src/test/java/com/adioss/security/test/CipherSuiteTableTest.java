@@ -0,0 +1,60 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The table generated at build time must hold exactly the suites of
+ * the CSV, and the generator must reject misclassified entries.
+ */
+public class CipherSuiteTableTest extends TestCase {
+
+    public void testTableRoundTrip() throws Exception {
+        List<CipherSuite> csv = CipherSuiteTable.parse(new InputStreamReader(
+                CipherSuiteTable.class.getResourceAsStream(CipherSuiteTable.CSV), StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CipherSuiteTable.write(csv, out);
+        assertSameSuites(csv, CipherSuiteTable.read(new ByteArrayInputStream(out.toByteArray())));
+        assertSameSuites(csv, CipherSuiteTable.load());
+        assertEquals(csv.size(), CipherSuiteUnion.CIPHER_SUITES.size());
+    }
+
+    public void testRejectsWrongClassification() throws Exception {
+        try {
+            CipherSuiteTable.parse(new StringReader("0x0004,RSA_WITH_RC4_128_MD5,B8\n"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("RSA_WITH_RC4_128_MD5"));
+        }
+    }
+
+    public void testRejectsDuplicateCode() throws Exception {
+        try {
+            CipherSuiteTable.parse(new StringReader("code,name,class\n"
+                    + "0x0004,RSA_WITH_RC4_128_MD5,S8\n"
+                    + "# comment\n"
+                    + "0x0004,RSA_WITH_RC4_128_SHA,S8\n"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains(":4:"));
+        }
+    }
+
+    private static void assertSameSuites(List<CipherSuite> expected, List<CipherSuite> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            CipherSuite e = expected.get(i);
+            CipherSuite a = actual.get(i);
+            assertEquals(e.suite, a.suite);
+            assertEquals(e.name, a.name);
+            assertEquals(e.strength, a.strength);
+            assertEquals(e.isCBC, a.isCBC);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.adioss.security.test.CipherSuiteUnion.ALL_SUITES;
+import static com.adioss.security.test.CipherSuiteUnion.CIPHER_SUITES;
+
+/**
+ * The template must produce the same record as makeClientHello()
+ * framed by OutputRecord, client random aside.
+ */
+public class ClientHelloTemplateTest extends TestCase {
+
+    public void testSameRecordAsMakeClientHello() throws Exception {
+        List<Integer> few = Arrays.asList(0x0005, 0x002F, 0xC013);
+        for (int version = 0x0300; version <= 0x0303; version++) {
+            assertSameRecord(version, CIPHER_SUITES.keySet());
+            assertSameRecord(version, ALL_SUITES);
+            assertSameRecord(version, few);
+            assertSameRecord(version, new ArrayList<Integer>());
+        }
+    }
+
+    public void testSendSmallAndLargeHellos() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientHelloTemplate.send(out, 0x0301, Arrays.asList(0x002F));
+        List<Integer> many = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            many.add(i);
+        }
+        ClientHelloTemplate.send(out, 0x0301, many);
+        assertEquals(ClientHelloTemplate.length(1) + ClientHelloTemplate.length(2000), out.size());
+
+        // more suites than a record can carry
+        for (int i = 2000; i < 9000; i++) {
+            many.add(i);
+        }
+        try {
+            ClientHelloTemplate.send(out, 0x0301, many);
+            fail("oversized ClientHello sent");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(ClientHelloTemplate.length(1) + ClientHelloTemplate.length(2000), out.size());
+        }
+    }
+
+    private static void assertSameRecord(int version, Collection<Integer> suites) throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        OutputRecord orec = new OutputRecord(expected);
+        orec.setType(Constants.HANDSHAKE);
+        orec.setVersion(version);
+        orec.write(TestSSLServer.makeClientHello(version, suites));
+        orec.flush();
+
+        byte[] want = expected.toByteArray();
+        byte[] got = ClientHelloTemplate.encode(version, suites);
+        assertEquals(want.length, got.length);
+        // The client random (time included) differs on each call.
+        Arrays.fill(want, 11, 43, (byte) 0);
+        Arrays.fill(got, 11, 43, (byte) 0);
+        assertTrue(Arrays.equals(want, got));
+    }
+}
@@ -0,0 +1,59 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static com.adioss.security.test.ComplianceEngine.BANNED_SUITES;
+
+/**
+ * The banned suites are the ones AssumptionManager excludes, and the
+ * compliance scan finds each one a server accepts.
+ */
+public class ComplianceEngineTest extends TestCase {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+    private static final List<Integer> ALLOWED_SUITES = Arrays.asList(0xC02F, 0xC030, 0x009C, 0x009D);
+
+    public void testBannedSuites() throws Exception {
+        assertTrue(BANNED_SUITES.contains(0x0004)); // RSA_WITH_RC4_128_MD5
+        assertTrue(BANNED_SUITES.contains(0x000A)); // RSA_WITH_3DES_EDE_CBC_SHA
+        assertTrue(BANNED_SUITES.contains(0x002F)); // RSA_WITH_AES_128_CBC_SHA
+        assertTrue(BANNED_SUITES.contains(0x006C)); // DH_anon_WITH_AES_128_CBC_SHA256
+        assertTrue(BANNED_SUITES.contains(0x0000)); // NULL_WITH_NULL_NULL
+        assertFalse(BANNED_SUITES.contains(0x009C)); // RSA_WITH_AES_128_GCM_SHA256
+        assertFalse(BANNED_SUITES.contains(0xC02F)); // ECDHE_RSA_WITH_AES_128_GCM_SHA256
+    }
+
+    public void testExclusions() throws Exception {
+        assertTrue(ComplianceEngine.exclusions(0x009C).isEmpty());
+        assertFalse(ComplianceEngine.exclusions(0x0004).isEmpty());
+    }
+
+    public void testHiddenBannedSuite() throws Exception {
+        // RSA_WITH_RC4_128_SHA, at TLS 1.0 only, last in the server's preference
+        MemoryTransport transport = new MemoryTransport().serve(TARGET, new FakeTlsServer(0x0301, 0x0303,
+                ALLOWED_SUITES, FakeTlsServer.certificate())
+                .suites(0x0301, Arrays.asList(0xC02F, 0xC030, 0x009C, 0x009D, 0x0005))
+                .ssl2(0x010080));
+        Prober prober = new Prober(0, 0, true).withTransport(transport);
+        ExecutorService executor = ScanExecutors.platform(4);
+        ScanReport report;
+        try {
+            report = new ComplianceEngine(executor, prober, 4, 0).scan(TARGET);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(Collections.singleton(0x0301), report.bannedSuites.keySet());
+        assertEquals(SuiteSet.of(Collections.singletonList(0x0005)), report.bannedSuites.get(0x0301));
+        assertEquals(Collections.singleton(0x010080), report.supportedCipherSuitesV2);
+        assertTrue(report.bannedAccepted());
+        // the certificate is read even in hello-only mode
+        assertEquals(1, report.certID.size());
+        assertTrue(report.certID.iterator().next().contains("fake.example.org"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Local port selection, reset on close and counters, against a local
+ * listening socket.
+ */
+public class ConnectionFactoryTest extends TestCase {
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    public void testPortRangeSkipsBusyPorts() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, LOOPBACK);
+             ServerSocket busy = busyPortBelowFreeOne()) {
+            int low = busy.getLocalPort();
+            ConnectionFactory connections = new ConnectionFactory(false, LOOPBACK, low, low + 1, 0, 0);
+            InetSocketAddress isa = new InetSocketAddress(LOOPBACK, server.getLocalPort());
+            Socket socket = connections.open(isa, 1000);
+            try {
+                assertEquals(low + 1, socket.getLocalPort());
+                assertEquals(1, connections.portsBusy.get());
+                assertEquals(1, connections.inUse.get());
+            } finally {
+                connections.close(socket);
+            }
+            assertEquals(0, connections.inUse.get());
+            assertEquals(1, connections.peakInUse.get());
+        }
+    }
+
+    public void testResetOnClose() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, LOOPBACK)) {
+            ConnectionFactory connections = new ConnectionFactory(true, null, 0, 0, 0, 4096);
+            Socket socket = connections.open(new InetSocketAddress(LOOPBACK, server.getLocalPort()), 1000);
+            try (Socket accepted = server.accept()) {
+                connections.close(socket);
+                InputStream in = accepted.getInputStream();
+                try {
+                    assertEquals(-1, in.read());
+                    fail("expected a connection reset");
+                } catch (SocketException se) {
+                    // the RST of SO_LINGER 0
+                }
+            }
+            assertEquals(1, connections.opened.get());
+            assertEquals(1, connections.reset.get());
+        }
+    }
+
+    public void testInvalidRange() throws Exception {
+        try {
+            new ConnectionFactory(false, null, 2000, 1000, 0, 0);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * A bound socket whose port is followed by a free one.
+     */
+    private static ServerSocket busyPortBelowFreeOne() throws IOException {
+        for (; ; ) {
+            ServerSocket busy = new ServerSocket(0, 50, LOOPBACK);
+            int next = busy.getLocalPort() + 1;
+            if (next <= 65535) {
+                try (ServerSocket probe = new ServerSocket(next, 50, LOOPBACK)) {
+                    return busy;
+                } catch (IOException ioe) {
+                    // taken, try another one
+                }
+            }
+            busy.close();
+        }
+    }
+}
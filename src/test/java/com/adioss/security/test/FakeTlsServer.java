@@ -0,0 +1,220 @@
+package com.adioss.security.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.adioss.security.test.Constants.ALERT;
+import static com.adioss.security.test.Constants.HANDSHAKE;
+import static com.adioss.security.test.Utils.dec16be;
+import static com.adioss.security.test.Utils.enc16be;
+import static com.adioss.security.test.Utils.enc24be;
+
+/*
+ * A scripted SSL/TLS server for MemoryTransport: it answers a
+ * ClientHello the way a real server would, as far as the scanner can
+ * tell. The protocol version is the highest one both sides support;
+ * the cipher suite is the first one of the server's list (its
+ * preference order) which the client offered, or with followClient()
+ * the first offered one which the server supports. The answer is a
+ * ServerHello, a Certificate message when a certificate is set, and
+ * ServerHelloDone, framed with OutputRecord; a refusal is a fatal
+ * alert. An SSLv2 CLIENT-HELLO gets a SERVER-HELLO listing the
+ * configured SSLv2 cipher specs, or no answer at all.
+ *
+ * Nothing is encrypted and no handshake goes further: the scanner
+ * never reads past ServerHelloDone.
+ */
+final class FakeTlsServer implements MemoryTransport.Responder {
+    private static final int HANDSHAKE_FAILURE = 40;
+    private static final int PROTOCOL_VERSION = 70;
+
+    private final int minVersion;
+    private final int maxVersion;
+    private final List<Integer> suites;
+    private final Map<Integer, List<Integer>> versionSuites = new HashMap<>();
+    private final byte[] certificate;
+    private boolean followClient;
+    private boolean compression;
+    private int[] ssl2CipherSpecs;
+
+    /**
+     * The DER encoding of the certificate of the tests (fake-server.der,
+     * for fake.example.org).
+     */
+    static byte[] certificate() throws IOException {
+        try (InputStream in = FakeTlsServer.class.getResourceAsStream("fake-server.der")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * A server of versions minVersion to maxVersion (0x0300 to 0x0303),
+     * with its suites in preference order; certificate is the DER
+     * encoding of its certificate, or null.
+     */
+    FakeTlsServer(int minVersion, int maxVersion, List<Integer> suites, byte[] certificate) {
+        this.minVersion = minVersion;
+        this.maxVersion = maxVersion;
+        this.suites = new ArrayList<>(suites);
+        this.certificate = certificate;
+    }
+
+    /**
+     * Use other suites at this version.
+     */
+    FakeTlsServer suites(int version, List<Integer> suites) {
+        versionSuites.put(version, new ArrayList<>(suites));
+        return this;
+    }
+
+    /**
+     * Choose the client's preferred suite instead of the server's.
+     */
+    FakeTlsServer followClient() {
+        followClient = true;
+        return this;
+    }
+
+    /**
+     * Accept Deflate compression when the client offers it.
+     */
+    FakeTlsServer compression() {
+        compression = true;
+        return this;
+    }
+
+    /**
+     * Also answer SSLv2, with these (24-bit) cipher specs.
+     */
+    FakeTlsServer ssl2(int... cipherSpecs) {
+        ssl2CipherSpecs = cipherSpecs.clone();
+        return this;
+    }
+
+    List<Integer> suites(int version) {
+        List<Integer> vs = versionSuites.get(version);
+        return vs == null ? suites : vs;
+    }
+
+    @Override
+    public byte[] respond(byte[] request) throws IOException {
+        if (request.length >= 2 && (request[0] & 0x80) != 0) {
+            return respondSSLv2();
+        }
+        if (request.length < 5 + 4 + 2 + 32 + 1 || request[0] != HANDSHAKE || request[5] != 1) {
+            return new byte[0];
+        }
+        int clientVersion = dec16be(request, 9);
+        int ptr = 43;
+        ptr += 1 + (request[ptr] & 0xFF);
+        int suitesLen = dec16be(request, ptr);
+        ptr += 2;
+        int[] offered = new int[suitesLen / 2];
+        for (int i = 0; i < offered.length; i++) {
+            offered[i] = dec16be(request, ptr + 2 * i);
+        }
+        ptr += suitesLen;
+        boolean deflate = false;
+        int methods = request[ptr] & 0xFF;
+        for (int i = 0; i < methods; i++) {
+            deflate |= request[ptr + 1 + i] == 1;
+        }
+
+        int version = Math.min(clientVersion, maxVersion);
+        if (version < minVersion) {
+            return alert(Math.max(clientVersion, 0x0300), PROTOCOL_VERSION);
+        }
+        int suite = choose(suites(version), offered);
+        if (suite < 0) {
+            return alert(version, HANDSHAKE_FAILURE);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(certificate == null ? 128 : certificate.length + 128);
+        OutputRecord rec = new OutputRecord(out);
+        try {
+            rec.setType(HANDSHAKE);
+            rec.setVersion(version);
+            // The server random and the session ID stay empty (zeros).
+            byte[] hello = new byte[4 + 2 + 32 + 1 + 3];
+            hello[0] = 2;
+            enc24be(hello.length - 4, hello, 1);
+            enc16be(version, hello, 4);
+            enc16be(suite, hello, 39);
+            hello[41] = (byte) (compression && deflate ? 1 : 0);
+            rec.write(hello);
+            if (certificate != null) {
+                byte[] header = new byte[10];
+                header[0] = 11;
+                enc24be(certificate.length + 6, header, 1);
+                enc24be(certificate.length + 3, header, 4);
+                enc24be(certificate.length, header, 7);
+                rec.write(header);
+                rec.write(certificate);
+            }
+            rec.write(new byte[]{14, 0, 0, 0});
+            rec.flush();
+        } finally {
+            rec.close();
+        }
+        return out.toByteArray();
+    }
+
+    private int choose(List<Integer> supported, int[] offered) {
+        if (followClient) {
+            for (int suite : offered) {
+                if (supported.contains(suite)) {
+                    return suite;
+                }
+            }
+            return -1;
+        }
+        for (int suite : supported) {
+            for (int o : offered) {
+                if (o == suite) {
+                    return suite;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] alert(int version, int description) {
+        byte[] alert = {(byte) ALERT, 0, 0, 0, 2, 2, (byte) description};
+        enc16be(version, alert, 1);
+        return alert;
+    }
+
+    private byte[] respondSSLv2() {
+        if (ssl2CipherSpecs == null) {
+            return new byte[0];
+        }
+        int certLen = certificate == null ? 0 : certificate.length;
+        int csLen = 3 * ssl2CipherSpecs.length;
+        int len = 11 + certLen + csLen + 16;
+        byte[] hello = new byte[2 + len];
+        enc16be(0x8000 | len, hello, 0);
+        hello[2] = 4;
+        hello[4] = 1;
+        enc16be(0x0002, hello, 5);
+        enc16be(certLen, hello, 7);
+        enc16be(csLen, hello, 9);
+        enc16be(16, hello, 11);
+        if (certificate != null) {
+            System.arraycopy(certificate, 0, hello, 13, certLen);
+        }
+        for (int i = 0; i < ssl2CipherSpecs.length; i++) {
+            enc24be(ssl2CipherSpecs[i], hello, 13 + certLen + 3 * i);
+        }
+        return hello;
+    }
+}
@@ -0,0 +1,163 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end scans of fake servers over MemoryTransport: what the
+ * scanner reports must be what the servers were scripted with.
+ */
+public class FakeTlsServerTest extends TestCase {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+    private static final List<Integer> TLS12_SUITES = Arrays.asList(0xC02F, 0x009C, 0x002F, 0x0035, 0x000A);
+    private static final List<Integer> TLS10_SUITES = Arrays.asList(0x002F, 0x0035, 0x000A, 0x0005);
+
+    private ExecutorService executor;
+    private MemoryTransport transport;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = ScanExecutors.platform(8);
+        transport = new MemoryTransport();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testFullScan() throws Exception {
+        transport.serve(TARGET, new FakeTlsServer(0x0301, 0x0303, TLS12_SUITES, FakeTlsServer.certificate())
+                .suites(0x0301, TLS10_SUITES).suites(0x0302, TLS10_SUITES).ssl2(0x010080));
+        ScanReport report = new ScanEngine(executor, prober(), 4, 0).scan(TARGET);
+
+        assertEquals(Arrays.asList(0x0200, 0x0301, 0x0302, 0x0303), Arrays.asList(
+                report.protocolVersions.toArray(new Integer[0])));
+        assertEquals(SuiteSet.of(TLS10_SUITES), report.supportedCipherSuites.get(0x0301));
+        assertEquals(SuiteSet.of(TLS10_SUITES), report.supportedCipherSuites.get(0x0302));
+        assertEquals(SuiteSet.of(TLS12_SUITES), report.supportedCipherSuites.get(0x0303));
+        assertEquals(Arrays.asList(0x010080), Arrays.asList(report.supportedCipherSuitesV2.toArray(new Integer[0])));
+        assertEquals(1, report.certID.size());
+        assertTrue(report.certID.iterator().next().contains("fake.example.org"));
+        assertFalse(report.compress);
+        // TLS 1.0: AES-CBC is preferred over RC4
+        assertTrue(report.vulnBEAST);
+        assertFalse(report.incomplete);
+    }
+
+    public void testPreferenceOrder() throws Exception {
+        transport.serve(TARGET, new FakeTlsServer(0x0303, 0x0303, TLS12_SUITES, null));
+        ScanReport report = new ScanEngine(executor, prober(), 4, 0, false, true).scan(TARGET);
+        PreferenceOrder order = report.preferenceOrders.get(0x0303);
+        assertFalse(order.followsClient);
+        assertTrue(order.complete);
+        assertEquals(TLS12_SUITES.toString(), Arrays.toString(order.suites));
+        assertTrue(report.certID.isEmpty());
+
+        transport.serve(TARGET, new FakeTlsServer(0x0303, 0x0303, TLS12_SUITES, null).followClient());
+        report = new ScanEngine(executor, prober(), 4, 0, false, true).scan(TARGET);
+        assertTrue(report.preferenceOrders.get(0x0303).followsClient);
+    }
+
+    public void testSpeculative() throws Exception {
+        transport.serve(TARGET, new FakeTlsServer(0x0300, 0x0303, TLS10_SUITES, FakeTlsServer.certificate())
+                .compression());
+        List<Integer> suiteEvents = new ArrayList<>();
+        List<Integer> inferred = new ArrayList<>();
+        ScanListener listener = new ScanListener() {
+            @Override
+            public synchronized void suite(InetSocketAddress isa, int version, int suite) {
+                suiteEvents.add(version);
+            }
+
+            @Override
+            public synchronized void inferred(InetSocketAddress isa, int version, SuiteSet suites) {
+                inferred.add(version);
+            }
+        };
+        ScanReport report = new ScanEngine(executor, prober(), 4, 0, true, false, listener).scan(TARGET);
+        for (int version = 0x0300; version <= 0x0303; version++) {
+            assertEquals(SuiteSet.of(TLS10_SUITES), report.supportedCipherSuites.get(version));
+        }
+        assertEquals(Arrays.asList(0x0301, 0x0302, 0x0303), Arrays.asList(
+                report.speculativeVersions.toArray(new Integer[0])));
+        assertEquals(report.speculativeVersions, new TreeSet<>(inferred));
+        // only the suites of the base version were probed one by one
+        assertEquals(Collections.nCopies(TLS10_SUITES.size(), 0x0300), suiteEvents);
+        assertTrue(report.compress);
+
+        // a different TLS 1.2 is caught by the confirmation probes
+        transport.serve(TARGET, new FakeTlsServer(0x0300, 0x0303, TLS10_SUITES, FakeTlsServer.certificate())
+                .suites(0x0303, TLS12_SUITES));
+        report = new ScanEngine(executor, prober(), 4, 0, true, false).scan(TARGET);
+        assertEquals(SuiteSet.of(TLS12_SUITES), report.supportedCipherSuites.get(0x0303));
+        assertFalse(report.speculativeVersions.contains(0x0303));
+    }
+
+    public void testCompliance() throws Exception {
+        transport.serve(TARGET, new FakeTlsServer(0x0303, 0x0303, TLS12_SUITES, FakeTlsServer.certificate()));
+        ScanReport report = new ComplianceEngine(executor, prober(), 4, 0).scan(TARGET);
+        assertEquals(SuiteSet.of(Arrays.asList(0x002F, 0x0035, 0x000A)), report.bannedSuites.get(0x0303));
+
+        MemoryTransport clean = new MemoryTransport().serve(TARGET,
+                new FakeTlsServer(0x0303, 0x0303, Arrays.asList(0xC02F, 0x009C), FakeTlsServer.certificate()));
+        report = new ComplianceEngine(executor, prober().withTransport(clean), 4, 0).scan(TARGET);
+        assertTrue(report.bannedSuites.isEmpty());
+        assertEquals(6, clean.connections.get());
+    }
+
+    public void testResetsAreRetried() throws Exception {
+        transport.serve(TARGET, new FakeTlsServer(0x0303, 0x0303, TLS12_SUITES, FakeTlsServer.certificate()));
+        AtomicInteger calls = new AtomicInteger();
+        Transport resetting = (isa, connect, read) -> {
+            if (calls.incrementAndGet() % 3 == 0) {
+                throw new SocketException("Connection reset");
+            }
+            return transport.connect(isa, connect, read);
+        };
+        // one probe thread, so that the retry of a probe is the next call
+        executor.shutdownNow();
+        executor = ScanExecutors.platform(1);
+        ScanReport report = new ScanEngine(executor, prober().withTransport(resetting), 4, 0).scan(TARGET);
+        assertFalse(SuiteSet.of(TLS12_SUITES).equals(report.supportedCipherSuites.get(0x0303)));
+
+        calls.set(0);
+        Prober throttled = prober().withTransport(resetting).withThrottle(new TargetThrottle(8, true, 0));
+        report = new ScanEngine(executor, throttled, 4, 0).scan(TARGET);
+        assertEquals(SuiteSet.of(TLS12_SUITES), report.supportedCipherSuites.get(0x0303));
+    }
+
+    public void testDeadline() throws Exception {
+        // a server which never answers: each read outlives the 1 ms deadline of the scan, then times out
+        transport.serve(TARGET, request -> {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException ie) {
+                throw new InterruptedIOException();
+            }
+            throw new SocketTimeoutException("Read timed out");
+        });
+        ScanReport report = new ScanEngine(executor, prober(), 1, 1).scan(TARGET);
+        assertTrue(report.incomplete);
+
+        transport.serve(TARGET, new FakeTlsServer(0x0303, 0x0303, TLS12_SUITES, FakeTlsServer.certificate()));
+        report = new ScanEngine(executor, prober(), 1, 10000).scan(TARGET);
+        assertFalse(report.incomplete);
+        assertEquals(SuiteSet.of(TLS12_SUITES), report.supportedCipherSuites.get(0x0303));
+    }
+
+    private Prober prober() {
+        return new Prober(0, 0, false).withTransport(transport);
+    }
+}
@@ -0,0 +1,96 @@
+package com.adioss.security.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * A Transport without network: each address is served by a Responder,
+ * called with everything the client wrote once the client starts
+ * reading; its answer is then read back, followed by the end of the
+ * stream (the server closes). A connection to an address without a
+ * responder is refused.
+ *
+ * Probes send their whole hello before reading, so a responder sees
+ * complete hello messages, and runs on the probe's own thread.
+ *
+ * The JMH benchmarks (src/jmh) are compiled against the test classes,
+ * so MemoryScanBenchmark scans over it too.
+ */
+final class MemoryTransport implements Transport {
+
+    /*
+     * The scripted server side of a connection. It may throw to simulate
+     * a failure, e.g. a SocketException for a connection reset.
+     */
+    interface Responder {
+        byte[] respond(byte[] request) throws IOException;
+    }
+
+    private final Map<InetSocketAddress, Responder> servers = new ConcurrentHashMap<>();
+    final AtomicLong connections = new AtomicLong();
+
+    MemoryTransport serve(InetSocketAddress isa, Responder responder) {
+        servers.put(isa, responder);
+        return this;
+    }
+
+    @Override
+    public Connection connect(InetSocketAddress isa, int connectTimeout, int readTimeout) throws IOException {
+        Responder responder = servers.get(isa);
+        if (responder == null) {
+            throw new ConnectException("Connection refused");
+        }
+        connections.incrementAndGet();
+        return new MemoryConnection(responder);
+    }
+
+    private static final class MemoryConnection implements Connection {
+        private final Responder responder;
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream(512);
+        private InputStream response;
+
+        MemoryConnection(Responder responder) {
+            this.responder = responder;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return answer().read();
+                }
+
+                @Override
+                public int read(byte[] buf, int off, int len) throws IOException {
+                    return answer().read(buf, off, len);
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return request;
+        }
+
+        @Override
+        public void close() {
+            response = null;
+        }
+
+        private InputStream answer() throws IOException {
+            if (response == null) {
+                response = new ByteArrayInputStream(responder.respond(request.toByteArray()));
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The NDJSON events of a scan over MemoryTransport.
+ */
+public class NdjsonWriterTest extends TestCase {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+    private static final List<Integer> TLS12_SUITES = Arrays.asList(0xC02F, 0x009C, 0x002F, 0x0035, 0x000A);
+    private static final List<Integer> TLS10_SUITES = Arrays.asList(0x002F, 0x0035, 0x000A, 0x0005);
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = ScanExecutors.platform(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testStreamedScan() throws Exception {
+        MemoryTransport transport = new MemoryTransport().serve(TARGET, new FakeTlsServer(0x0301, 0x0303,
+                TLS12_SUITES, FakeTlsServer.certificate()).suites(0x0301, TLS10_SUITES).suites(0x0302, TLS10_SUITES)
+                .ssl2(0x010080));
+        StringWriter out = new StringWriter();
+        NdjsonWriter json = new NdjsonWriter(out);
+        Prober prober = new Prober(0, 0, false).withTransport(transport);
+        ScanReport report = new ScanEngine(executor, prober, 2, 0, true, false, json).scan(TARGET);
+        json.done(report);
+        assertFalse(json.checkError());
+
+        List<String> lines = Arrays.asList(out.toString().split("\n"));
+        String target = "{\"event\":\"%s\",\"target\":\"fake.example.org:443\"";
+        for (String version : new String[]{"SSLv2", "TLSv1.0", "TLSv1.1", "TLSv1.2"}) {
+            int first = lines.indexOf(String.format(target, "version") + ",\"version\":\"" + version + "\"}");
+            assertTrue(version, first >= 0);
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).startsWith(String.format(target, "suite") + ",\"version\":\"" + version + "\"")) {
+                    assertTrue(version + " suite before the version", i > first);
+                }
+            }
+        }
+        assertEquals(1, count(lines, String.format(target, "suite") + ",\"version\":\"SSLv2\""));
+        assertEquals(4, count(lines, String.format(target, "suite") + ",\"version\":\"TLSv1.0\""));
+        // speculative: told all at once after the confirmation, flagged as not probed
+        assertEquals(4, count(lines, String.format(target, "suite") + ",\"version\":\"TLSv1.1\""));
+        for (String line : lines) {
+            boolean inferred = line.startsWith(String.format(target, "suite") + ",\"version\":\"TLSv1.1\"");
+            assertEquals(line, inferred, line.endsWith(",\"inferred\":true}"));
+        }
+        assertEquals(5, count(lines, String.format(target, "suite") + ",\"version\":\"TLSv1.2\""));
+        assertTrue(lines.contains(String.format(target, "suite")
+                + ",\"version\":\"TLSv1.2\",\"suite\":\"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256\",\"code\":\"0xC02F\"}"));
+        assertEquals(1, count(lines, String.format(target, "certificate")));
+
+        String verdict = lines.get(lines.size() - 1);
+        assertTrue(verdict, verdict.startsWith(String.format(target, "verdict") + ",\"found\":true"));
+        assertTrue(verdict, verdict.contains(",\"speculative\":[\"TLSv1.1\"],"));
+        assertTrue(verdict, verdict.contains(",\"beast\":true,"));
+        assertEquals(1, count(lines, String.format(target, "verdict")));
+    }
+
+    public void testNoServer() {
+        StringWriter out = new StringWriter();
+        NdjsonWriter json = new NdjsonWriter(out);
+        json.done(new ScanReport(TARGET, json));
+        json.error(InetSocketAddress.createUnresolved("nowhere.example.org", 443), "unknown host");
+        // errors and verdicts are flushed at once
+        assertEquals("{\"event\":\"verdict\",\"target\":\"fake.example.org:443\",\"found\":false,"
+                + "\"incomplete\":false}\n"
+                + "{\"event\":\"error\",\"target\":\"nowhere.example.org:443\",\"message\":\"unknown host\"}\n",
+                out.toString());
+    }
+
+    public void testString() {
+        StringBuilder sb = new StringBuilder();
+        NdjsonWriter.string(sb, "CN=\"a\\b\"\n\t\u0001é");
+        assertEquals("\"CN=\\\"a\\\\b\\\"\\n\\t\\u0001é\"", sb.toString());
+    }
+
+    private static int count(List<String> lines, String prefix) {
+        int n = 0;
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,44 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes of a NioProbeEngine which is closed while they are in flight,
+ * against a local server which accepts connections and never answers.
+ */
+public class NioProbeEngineTest extends TestCase {
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    public void testCloseFailsProbesInFlight() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0, 50, LOOPBACK)) {
+            InetSocketAddress isa = new InetSocketAddress(LOOPBACK, silent.getLocalPort());
+            NioProbeEngine engine = new NioProbeEngine(4, 0, 0, false);
+            CompletableFuture<ServerHello> probe = engine.connect(isa, 0x0303, Collections.singletonList(0x002F));
+            // a stage which starts a new probe once the first one is over
+            CompletableFuture<ServerHello> next = probe.handle((sh, failure) ->
+                    engine.connect(isa, 0x0303, Collections.singletonList(0x0035))).thenCompose(f -> f);
+            engine.close();
+
+            assertFailed(probe);
+            assertFailed(next);
+            assertFailed(engine.connect(isa, 0x0303, Collections.singletonList(0x002F)));
+        }
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("probe of a closed engine completed");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Preference order recovered from simulated servers, with at most
+ * 2 + n * ceil(log2(n)) probes.
+ */
+public class PreferenceOrderTest extends TestCase {
+
+    public void testServerOrder() {
+        List<Integer> serverOrder = new ArrayList<>(new ArrayList<>(CipherSuiteUnion.ALL_SUITES).subList(0, 100));
+        Collections.shuffle(serverOrder, new Random(42));
+
+        PreferenceOrder order = PreferenceOrder.detect(SuiteSet.of(serverOrder), offered -> {
+            for (int suite : serverOrder) {
+                if (offered.contains(suite)) {
+                    return CompletableFuture.completedFuture(suite);
+                }
+            }
+            return CompletableFuture.completedFuture(-1);
+        }).join();
+
+        assertFalse(order.followsClient);
+        assertTrue(order.complete);
+        assertEquals(serverOrder, toList(order.suites));
+        assertTrue(order.probes + " probes", order.probes <= 2 + 100 * 7);
+    }
+
+    public void testClientOrder() {
+        SuiteSet supported = SuiteSet.of(Arrays.asList(0x0005, 0x002F, 0x0035, 0xC013));
+        PreferenceOrder order = PreferenceOrder.detect(supported,
+                offered -> CompletableFuture.completedFuture(offered.get(0))).join();
+        assertTrue(order.followsClient);
+        assertEquals(2, order.probes);
+        assertEquals(new ArrayList<>(supported), toList(order.suites));
+    }
+
+    public void testFailedProbes() {
+        SuiteSet supported = SuiteSet.of(Arrays.asList(0x0005, 0x002F, 0x0035));
+        int[] calls = new int[1];
+        PreferenceOrder order = PreferenceOrder.detect(supported, offered -> {
+            // the server answers the first two probes, then goes away
+            return CompletableFuture.completedFuture(calls[0]++ < 2 ? (int) offered.get(offered.size() - 1) : -1);
+        }).join();
+        assertFalse(order.complete);
+        assertEquals(3, order.suites.length);
+    }
+
+    private static List<Integer> toList(int[] suites) {
+        List<Integer> list = new ArrayList<>();
+        for (int suite : suites) {
+            list.add(suite);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,78 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static com.adioss.security.test.Utils.enc16be;
+import static com.adioss.security.test.Utils.enc24be;
+
+/**
+ * Answers are found again only for the very same hello, and hello-only
+ * answers do not stand for full probes.
+ */
+public class ProbeCacheTest extends TestCase {
+
+    public void testSameHelloOnly() throws Exception {
+        ProbeCache cache = new ProbeCache();
+        ServerHello sh = serverHello(0x0303, 0x002F);
+        SuiteSet suites = SuiteSet.of(Arrays.asList(0x0005, 0x002F));
+        cache.record(0x0303, suites, false, sh);
+
+        assertSame(sh, cache.lookup(0x0303, SuiteSet.of(Arrays.asList(0x0005, 0x002F)), false));
+        assertSame(sh, cache.lookup(0x0303, Arrays.asList(0x0005, 0x002F), true));
+        assertNull(cache.lookup(0x0302, suites, false));
+        assertNull(cache.lookup(0x0303, Arrays.asList(0x002F, 0x0005), false));
+        assertNull(cache.lookup(0x0303, Arrays.asList(0x002F), false));
+        assertEquals(2, cache.saved());
+    }
+
+    public void testHelloOnlyAnswers() throws Exception {
+        ProbeCache cache = new ProbeCache();
+        ServerHello sh = serverHello(0x0301, 0x0005);
+        cache.record(0x0301, Arrays.asList(0x0005), true, sh);
+        assertNull(cache.lookup(0x0301, Arrays.asList(0x0005), false));
+        assertSame(sh, cache.lookup(0x0301, Arrays.asList(0x0005), true));
+
+        ServerHello full = serverHello(0x0301, 0x0005);
+        cache.record(0x0301, Arrays.asList(0x0005), false, full);
+        assertSame(full, cache.lookup(0x0301, Arrays.asList(0x0005), false));
+        cache.record(0x0301, Arrays.asList(0x0005), true, sh);
+        assertSame(full, cache.lookup(0x0301, Arrays.asList(0x0005), false));
+    }
+
+    public void testFailuresAreNotRecorded() {
+        ProbeCache cache = new ProbeCache();
+        cache.record(0x0303, Arrays.asList(0x002F), false, null);
+        assertNull(cache.lookup(0x0303, Arrays.asList(0x002F), true));
+        assertEquals(0, cache.saved());
+    }
+
+    public void testReplayCachedFirstStep() throws Exception {
+        ProbeCache cache = new ProbeCache();
+        SuiteSet candidates = SuiteSet.of(Arrays.asList(0x0005, 0x002F, 0x0035));
+        cache.record(0x0303, candidates, false, serverHello(0x0303, 0x0035));
+
+        SuiteSet found = TestSSLServer.replayCached(cache, 0x0303, candidates, true, new ScanReport(null));
+        assertEquals(SuiteSet.of(Arrays.asList(0x0035)), found);
+        assertEquals(SuiteSet.of(Arrays.asList(0x0005, 0x002F)), candidates);
+        assertEquals(1, cache.saved());
+    }
+
+    /**
+     * A handshake record holding just a ServerHello, decoded in
+     * hello-only mode.
+     */
+    static ServerHello serverHello(int version, int cipherSuite) throws Exception {
+        byte[] rec = new byte[5 + 4 + 2 + 32 + 1 + 2 + 1];
+        rec[0] = 22;
+        enc16be(version, rec, 1);
+        enc16be(rec.length - 5, rec, 3);
+        rec[5] = 2;
+        enc24be(rec.length - 9, rec, 6);
+        enc16be(version, rec, 9);
+        enc16be(cipherSuite, rec, 44);
+        return new ServerHello(new ByteArrayInputStream(rec), true);
+    }
+}
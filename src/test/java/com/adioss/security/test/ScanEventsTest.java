@@ -0,0 +1,96 @@
+package com.adioss.security.test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The Flight Recorder events of a scan over MemoryTransport.
+ */
+public class ScanEventsTest extends TestCase {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = ScanExecutors.platform(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testRecordedScan() throws Exception {
+        MemoryTransport transport = new MemoryTransport().serve(TARGET, new FakeTlsServer(0x0301, 0x0303,
+                Arrays.asList(0xC02F, 0x002F, 0x0035), FakeTlsServer.certificate()));
+        Prober prober = new Prober(0, 0, false).withTransport(transport);
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.adioss.security.test.Probe");
+            recording.enable("com.adioss.security.test.ScanPhase");
+            recording.start();
+            new ScanEngine(executor, prober, 2, 0).scan(TARGET);
+            recording.stop();
+            File file = File.createTempFile("scan", ".jfr");
+            try {
+                recording.dump(file.toPath());
+                events = RecordingFile.readAllEvents(file.toPath());
+            } finally {
+                file.delete();
+            }
+        }
+
+        int probes = 0;
+        int accepted = 0;
+        List<String> phases = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().endsWith(".Probe")) {
+                probes++;
+                assertEquals("fake.example.org:443", event.getString("target"));
+                if (event.getString("outcome").equals(ScanEvents.ACCEPTED)) {
+                    accepted++;
+                    assertNotNull(event.getString("chosenSuite"));
+                }
+            } else if (TARGET.getHostString().equals(hostOf(event.getString("target")))) {
+                phases.add(event.getString("phase") + " " + event.getString("version"));
+            }
+        }
+        assertEquals(transport.connections.get(), probes);
+        assertTrue(accepted > 0);
+        assertTrue(phases.contains(ScanEvents.VERSION_DETECTION + " null"));
+        assertTrue(phases.contains(ScanEvents.ENUMERATION + " TLSv1.0"));
+        assertTrue(phases.contains(ScanEvents.ENUMERATION + " TLSv1.2"));
+        // read by the version probes, under the target of the probe
+        assertTrue(phases.contains(ScanEvents.CERTIFICATE_FETCH + " TLSv1.2"));
+        // CBC and non-CBC suites at TLS 1.0: one probe tells which one wins
+        assertTrue(phases.contains(ScanEvents.BEAST_TEST + " TLSv1.0"));
+        assertFalse(phases.contains(ScanEvents.BEAST_TEST + " TLSv1.2"));
+    }
+
+    public void testOutcome() {
+        assertEquals(ScanEvents.ACCEPTED, ScanEvents.outcome(true, null));
+        assertEquals(ScanEvents.REFUSED, ScanEvents.outcome(true, new EOFException()));
+        assertEquals(ScanEvents.READ_TIMEOUT, ScanEvents.outcome(true, new SocketTimeoutException()));
+        assertEquals(ScanEvents.ERROR, ScanEvents.outcome(true, new IOException("invalid ServerHello")));
+        assertEquals(ScanEvents.CONNECT_TIMEOUT, ScanEvents.outcome(false, new SocketTimeoutException()));
+        assertEquals(ScanEvents.CONNECT_FAILED, ScanEvents.outcome(false, new ConnectException()));
+    }
+
+    private static String hostOf(String target) {
+        return target == null ? null : target.substring(0, target.lastIndexOf(':'));
+    }
+}
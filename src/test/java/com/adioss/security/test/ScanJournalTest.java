@@ -0,0 +1,125 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Batch scans resumed from a ScanJournal, over MemoryTransport.
+ */
+public class ScanJournalTest extends TestCase {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+    private static final List<Integer> TLS12_SUITES = Arrays.asList(0xC02F, 0x009C, 0x002F, 0x0035, 0x000A);
+
+    private ExecutorService executor;
+    private MemoryTransport transport;
+    private Path file;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = ScanExecutors.platform(4);
+        transport = new MemoryTransport().serve(TARGET, new FakeTlsServer(0x0303, 0x0303, TLS12_SUITES, null));
+        file = Files.createTempFile("scan", ".journal");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        Files.delete(file);
+    }
+
+    public void testResumedEnumeration() throws Exception {
+        ScanReport full = scan(ScanListener.NONE);
+        long fullConnections = transport.connections.getAndSet(0);
+
+        write("S\tfake.example.org:443\t0303\tC02F\n"
+                + "S\tfake.example.org:443\t0303\t009C\n"
+                + "S\tfake.example.org:443\t0303\t002F\n"
+                + "I\tfake.example.org:443\t0303\t0035\n");
+        SuiteSet told = new SuiteSet();
+        ScanListener next = new ScanListener() {
+            @Override
+            public synchronized void suite(InetSocketAddress isa, int version, int suite) {
+                told.add(suite);
+            }
+        };
+        try (ScanJournal journal = ScanJournal.open(file, next)) {
+            assertNull(journal.finished(TARGET));
+            ScanReport resumed = scan(journal);
+            assertEquals(full.supportedCipherSuites, resumed.supportedCipherSuites);
+        }
+        // of the three journaled suites, the version probe found one
+        // anyway; the inferred one is probed again
+        assertEquals(fullConnections - 2, transport.connections.get());
+
+        // the resumed suites are passed on, but not journaled twice
+        assertEquals(SuiteSet.of(TLS12_SUITES), told);
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int suite : TLS12_SUITES) {
+            assertEquals(1, Collections.frequency(lines, String.format("S\tfake.example.org:443\t0303\t%04X", suite)));
+        }
+    }
+
+    public void testPeriodicSync() throws Exception {
+        try (ScanJournal journal = ScanJournal.open(file, ScanListener.NONE)) {
+            journal.suite(TARGET, 0x0303, 0xC02F);
+            // no D record to flush it: the syncer writes it out
+            long end = System.currentTimeMillis() + 5 * ScanJournal.SYNC_INTERVAL_MILLIS;
+            while (Files.size(file) == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(50);
+            }
+            assertEquals("S\tfake.example.org:443\t0303\tC02F\n",
+                    new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+    }
+
+    public void testFinishedHostsAreSkipped() throws Exception {
+        write("S\tfake.example.org:443\t0303\tC02F\n"
+                + "D\tfake.example.org:443\t1\n"
+                + "S\tother.example.org:443\t0303\tC02F\n"
+                + "D\tother.example.org:443\t0\n"
+                + "S\tlast.invalid:443\t03");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ScanJournal journal = ScanJournal.open(file, ScanListener.NONE)) {
+            assertEquals(2, journal.finishedCount());
+            assertEquals(Boolean.TRUE, journal.finished(TARGET));
+            assertNull(journal.resumed(TARGET, 0x0303));
+            BatchScanner batch = new BatchScanner(this::scanUnresolved, 2, new PrintStream(out), null)
+                    .withJournal(journal);
+            assertEquals(1, batch.scanAll(Arrays.asList(TARGET,
+                    InetSocketAddress.createUnresolved("other.example.org", 443),
+                    InetSocketAddress.createUnresolved("last.invalid", 443))));
+        }
+        assertEquals(0, transport.connections.get());
+        assertEquals("=== last.invalid:443 ===\nUnknown host: last.invalid\n",
+                out.toString("UTF-8").replace(System.lineSeparator(), "\n"));
+
+        // the torn line was ended before the new records
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals("S\tlast.invalid:443\t03", lines.get(4));
+        assertEquals("D\tlast.invalid:443\t0", lines.get(5));
+        assertEquals(6, lines.size());
+    }
+
+    private ScanReport scan(ScanListener listener) {
+        Prober prober = new Prober(0, 0, false).withTransport(transport);
+        return new ScanEngine(executor, prober, 2, 0, false, false, listener).scan(TARGET);
+    }
+
+    private ScanReport scanUnresolved(InetSocketAddress isa) {
+        throw new AssertionError("finished host scanned again: " + isa);
+    }
+
+    private void write(String journal) throws Exception {
+        Files.write(file, journal.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,116 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Probes of scans over MemoryTransport, as recorded by
+ * ScanMetrics.INSTANCE (other tests also record there, hence the
+ * deltas), and the ways metrics are exposed.
+ */
+public class ScanMetricsTest extends TestCase {
+    private static final InetSocketAddress TARGET = InetSocketAddress.createUnresolved("fake.example.org", 443);
+    private static final InetSocketAddress NOWHERE = InetSocketAddress.createUnresolved("nowhere.example.org", 443);
+
+    private final ScanMetrics metrics = ScanMetrics.INSTANCE;
+    private ExecutorService executor;
+    private MemoryTransport transport;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = ScanExecutors.platform(4);
+        transport = new MemoryTransport().serve(TARGET, new FakeTlsServer(0x0303, 0x0303,
+                Arrays.asList(0xC02F, 0x002F), null));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testProbesAreRecorded() {
+        long probes = metrics.getProbes();
+        long sslv2 = metrics.getSSLv2Probes();
+        long sent = metrics.getBytesSent();
+        long received = metrics.getBytesReceived();
+        long hosts = metrics.getHostsScanned();
+        long found = metrics.getHostsFound();
+        long refusals = metrics.getRefusals();
+        long failures = metrics.getExchangeFailures();
+
+        ScanReport report = scanner().apply(TARGET);
+        assertFalse(report.isEmpty());
+        assertEquals(transport.connections.get(), metrics.getProbes() - probes);
+        assertEquals(1, metrics.getSSLv2Probes() - sslv2);
+        assertTrue(metrics.getBytesSent() - sent > transport.connections.get() * 40);
+        assertTrue(metrics.getBytesReceived() - received > 0);
+        assertEquals(1, metrics.getHostsScanned() - hosts);
+        assertEquals(1, metrics.getHostsFound() - found);
+        // eliminations end on refusals, which are not failures
+        assertTrue(metrics.getRefusals() - refusals > 0);
+        assertEquals(failures, metrics.getExchangeFailures());
+        assertEquals(0, metrics.getHostsInProgress().length);
+        assertTrue(Arrays.toString(metrics.getSlowestHosts()).contains("fake.example.org:443"));
+    }
+
+    public void testConnectFailures() {
+        long failures = metrics.getConnectFailures();
+        long found = metrics.getHostsFound();
+        assertTrue(scanner().apply(NOWHERE).isEmpty());
+        // four version probes and the SSLv2 probe
+        assertEquals(5, metrics.getConnectFailures() - failures);
+        assertEquals(found, metrics.getHostsFound());
+    }
+
+    public void testHistogram() {
+        ScanMetrics.Histogram histogram = new ScanMetrics.Histogram(new long[]{10, 100, 1000});
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(5000);
+        assertEquals(101, histogram.count());
+        assertEquals(10, histogram.percentile(5));
+        assertEquals(100, histogram.percentile(50));
+        assertEquals(100, histogram.percentile(99));
+        assertEquals(1000, histogram.percentile(100));
+
+        StringBuilder sb = new StringBuilder();
+        histogram.write(sb, "test", "a=\"b\",", 10);
+        assertEquals("cipherexplorer_test_bucket{a=\"b\",le=\"1.0\"} 10\n"
+                + "cipherexplorer_test_bucket{a=\"b\",le=\"10.0\"} 100\n"
+                + "cipherexplorer_test_bucket{a=\"b\",le=\"100.0\"} 100\n"
+                + "cipherexplorer_test_bucket{a=\"b\",le=\"+Inf\"} 101\n"
+                + "cipherexplorer_test_sum{a=\"b\"} 1005.0\n"
+                + "cipherexplorer_test_count{a=\"b\"} 101\n", sb.toString());
+    }
+
+    public void testExposition() throws Exception {
+        scanner().apply(TARGET);
+        String text = metrics.prometheus();
+        assertTrue(text.contains("# TYPE cipherexplorer_probe_duration_seconds histogram\n"));
+        assertTrue(text.contains("cipherexplorer_probe_duration_seconds_bucket{hello=\"tls\",le=\"+Inf\"} "));
+        assertTrue(text.contains("cipherexplorer_slowest_host_scan_seconds{rank=\"1\",host=\""));
+        assertTrue(text.contains("cipherexplorer_certificate_cache_hits_total "));
+        assertTrue(text.contains("# TYPE cipherexplorer_refusals_total counter\n"));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ScanMetrics.OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            ScanMetrics.register();
+        }
+        assertTrue((Long) server.getAttribute(name, "Probes") > 0);
+        assertTrue((Double) server.getAttribute(name, "ProbeMillisP99") > 0);
+    }
+
+    private Function<InetSocketAddress, ScanReport> scanner() {
+        Prober prober = new Prober(0, 0, false).withTransport(transport);
+        return metrics.instrument(new ScanEngine(executor, prober, 2, 0)::scan);
+    }
+}
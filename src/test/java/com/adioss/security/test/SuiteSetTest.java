@@ -0,0 +1,104 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.adioss.security.test.CipherSuiteUnion.ALL_SUITES;
+import static com.adioss.security.test.CipherSuiteUnion.CIPHER_SUITES;
+import static com.adioss.security.test.Constants.*;
+
+/**
+ * SuiteSet must behave as the TreeSet<Integer> it replaces, and the
+ * word-level strength checks as the per-suite loops.
+ */
+public class SuiteSetTest extends TestCase {
+
+    public void testSameAsTreeSet() {
+        List<Integer> codes = Arrays.asList(0xC030, 0x0000, 0x002F, 0xFFFF, 0x0040, 0x0005);
+        SuiteSet set = SuiteSet.of(codes);
+        Set<Integer> tree = new TreeSet<>(codes);
+        assertEquals(tree.size(), set.size());
+        assertEquals(new ArrayList<>(tree), new ArrayList<>(set));
+        assertEquals(tree, set);
+        assertEquals(set, tree);
+        assertEquals(tree.hashCode(), set.hashCode());
+
+        assertFalse(set.add(0x002F));
+        assertTrue(set.remove(0x002F));
+        assertFalse(set.contains(0x002F));
+        assertFalse(set.contains(0x010080));
+        assertEquals(codes.size() - 1, set.size());
+    }
+
+    public void testWordOperations() {
+        SuiteSet a = SuiteSet.of(Arrays.asList(0x0004, 0x0005, 0x0100, 0xC013));
+        SuiteSet b = SuiteSet.of(Arrays.asList(0x0005, 0xC013, 0xC014));
+
+        SuiteSet union = new SuiteSet(a);
+        union.or(b);
+        assertEquals(SuiteSet.of(Arrays.asList(0x0004, 0x0005, 0x0100, 0xC013, 0xC014)), union);
+        assertEquals(5, union.size());
+
+        SuiteSet difference = new SuiteSet(a);
+        difference.andNot(b);
+        assertEquals(SuiteSet.of(Arrays.asList(0x0004, 0x0100)), difference);
+
+        SuiteSet intersection = new SuiteSet(a);
+        intersection.and(b);
+        assertEquals(SuiteSet.of(Arrays.asList(0x0005, 0xC013)), intersection);
+
+        assertTrue(a.intersects(b));
+        assertFalse(difference.intersects(b));
+        assertFalse(a.equals(b));
+        assertTrue(Arrays.equals(new int[]{0x0004, 0x0100}, difference.toIntArray()));
+    }
+
+    public void testStrengthsAsPerSuiteLoops() {
+        List<Integer> codes = new ArrayList<>(ALL_SUITES);
+        for (int i = 0; i < codes.size(); i += 7) {
+            List<Integer> sample = codes.subList(i, Math.min(codes.size(), i + 5));
+            SuiteSet set = SuiteSet.of(sample);
+            assertEquals(TestSSLServer.minStrength(new ArrayList<>(sample)), TestSSLServer.minStrength(set));
+            assertEquals(TestSSLServer.maxStrength(new ArrayList<>(sample)), TestSSLServer.maxStrength(set));
+        }
+        assertEquals(STRONG, TestSSLServer.minStrength(new SuiteSet()));
+        assertEquals(CLEAR, TestSSLServer.maxStrength(new SuiteSet()));
+    }
+
+    public void testAllSuitesAreTheSixteenBitRegistryCodes() {
+        Set<Integer> expected = new TreeSet<>();
+        for (int code : CIPHER_SUITES.keySet()) {
+            if (code <= 0xFFFF) {
+                expected.add(code);
+            }
+        }
+        assertEquals(expected, ALL_SUITES);
+        for (int code : expected) {
+            assertSame(CIPHER_SUITES.get(code), CipherSuiteUnion.SUITES_BY_CODE[code]);
+        }
+    }
+
+    public void testStrongSuitesSplitByCBC() {
+        SuiteSet supp = SuiteSet.of(Arrays.asList(0x0004, 0x0005, 0x002F, 0x0009, 0x0001));
+        assertEquals(SuiteSet.of(Arrays.asList(0x002F)), TestSSLServer.strongSuites(supp, true));
+        assertEquals(SuiteSet.of(Arrays.asList(0x0004, 0x0005)), TestSSLServer.strongSuites(supp, false));
+    }
+
+    public void testConfirmationProbesSplitByClass() {
+        SuiteSet base = SuiteSet.of(Arrays.asList(0x0004, 0x0005, 0x002F, 0x0035, 0x0009));
+        SuiteSet refusal = TestSSLServer.refusalProbe(base);
+        assertEquals(ALL_SUITES.size() - base.size(), refusal.size());
+        assertFalse(refusal.intersects(base));
+        assertNull(TestSSLServer.refusalProbe(ALL_SUITES));
+
+        List<SuiteSet> probes = TestSSLServer.confirmationProbes(base);
+        assertEquals(Arrays.asList(SuiteSet.of(Arrays.asList(0x0009)),
+                SuiteSet.of(Arrays.asList(0x002F, 0x0035)),
+                SuiteSet.of(Arrays.asList(0x0004, 0x0005))), probes);
+    }
+}
@@ -0,0 +1,170 @@
+package com.adioss.security.test;
+
+import junit.framework.TestCase;
+
+import java.io.EOFException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD windows per target, token buckets per subnet; the clock is
+ * passed explicitly.
+ */
+public class TargetThrottleTest extends TestCase {
+    private static final InetSocketAddress TARGET = new InetSocketAddress("127.0.0.1", 443);
+    private static final long MS = 1000000L;
+
+    public void testWindowGrowsAndHalves() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(16, true, 0);
+        assertEquals(0, throttle.window(TARGET));
+        TargetThrottle.Permit a = throttle.tryAcquire(TARGET, 0);
+        TargetThrottle.Permit b = throttle.tryAcquire(TARGET, 0);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(throttle.tryAcquire(TARGET, 0));
+
+        // slow start: one more probe per answer
+        throttle.release(a, false, MS);
+        throttle.release(b, false, MS);
+        assertEquals(4, throttle.window(TARGET));
+
+        TargetThrottle.Permit[] permits = new TargetThrottle.Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = throttle.tryAcquire(TARGET, 2 * MS);
+            assertNotNull(permits[i]);
+        }
+        assertNull(throttle.tryAcquire(TARGET, 2 * MS));
+
+        // a burst of resets halves the window once
+        for (TargetThrottle.Permit permit : permits) {
+            throttle.release(permit, true, 3 * MS);
+        }
+        assertEquals(2, throttle.window(TARGET));
+        assertEquals(1, throttle.congestions());
+
+        // then additive increase: one probe per window of answers
+        for (int i = 0; i < 4; i++) {
+            throttle.release(throttle.tryAcquire(TARGET, 4 * MS), false, 5 * MS);
+        }
+        assertEquals(3, throttle.window(TARGET));
+    }
+
+    public void testSlowAnswerIsCongestion() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(16, true, 0);
+        throttle.release(throttle.tryAcquire(TARGET, 0), false, MS);
+        assertEquals(3, throttle.window(TARGET));
+        throttle.release(throttle.tryAcquire(TARGET, 0), false, 500 * MS);
+        assertEquals(1, throttle.window(TARGET));
+    }
+
+    public void testFixedWindow() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(3, false, 0);
+        TargetThrottle.Permit permit = null;
+        for (int i = 0; i < 3; i++) {
+            permit = throttle.tryAcquire(TARGET, 0);
+            assertNotNull(permit);
+        }
+        assertNull(throttle.tryAcquire(TARGET, 0));
+        throttle.release(permit, true, MS);
+        assertEquals(3, throttle.window(TARGET));
+        assertNotNull(throttle.tryAcquire(TARGET, MS));
+    }
+
+    public void testSubnetBucket() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(100, false, 2);
+        InetSocketAddress neighbour = new InetSocketAddress("127.0.0.2", 8443);
+        InetSocketAddress other = new InetSocketAddress("127.0.1.1", 443);
+        assertNotNull(throttle.tryAcquire(TARGET, 0));
+        assertNotNull(throttle.tryAcquire(neighbour, 0));
+        assertNull(throttle.tryAcquire(TARGET, 0));
+        assertNotNull(throttle.tryAcquire(other, 0));
+        assertEquals(500 * MS, throttle.nanosUntilToken(neighbour, 0));
+        assertNull(throttle.tryAcquire(neighbour, 499 * MS));
+        assertNotNull(throttle.tryAcquire(neighbour, 500 * MS));
+    }
+
+    public void testCongestionSignals() throws Exception {
+        SocketException reset = new SocketException("Connection reset");
+        assertTrue(TargetThrottle.isCongestion(new SocketTimeoutException("connect timed out"), false, false));
+        assertTrue(TargetThrottle.isCongestion(new SocketTimeoutException("Read timed out"), true, false));
+        assertTrue(TargetThrottle.isCongestion(reset, false, false));
+        assertFalse(TargetThrottle.isCongestion(new ConnectException("Connection refused"), false, false));
+
+        // a reset answering a hello is a refusal, unless the hello offers an accepted suite
+        assertFalse(TargetThrottle.isCongestion(reset, true, false));
+        assertTrue(TargetThrottle.isRefusal(reset, false));
+        assertTrue(TargetThrottle.isCongestion(reset, true, true));
+        assertFalse(TargetThrottle.isRefusal(reset, true));
+
+        assertFalse(TargetThrottle.isCongestion(new EOFException(), true, true));
+        assertTrue(TargetThrottle.isRefusal(new EOFException(), true));
+    }
+
+    public void testAcceptedOffers() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(4, true, 0);
+        throttle.release(throttle.tryAcquire(TARGET, 0), false, MS);
+        assertFalse(throttle.isAcceptedOffer(TARGET, 0x0303, Arrays.asList(0x002F, 0x0035)));
+        throttle.accepted(TARGET, 0x0303, 0x002F);
+        assertTrue(throttle.isAcceptedOffer(TARGET, 0x0303, Arrays.asList(0x002F, 0x0035)));
+        assertFalse(throttle.isAcceptedOffer(TARGET, 0x0303, Collections.singletonList(0x0035)));
+        assertFalse(throttle.isAcceptedOffer(TARGET, 0x0302, Arrays.asList(0x002F, 0x0035)));
+    }
+
+    public void testOnlyCongestionFailuresAreRetried() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(4, true, 0);
+        Prober unknown = new Prober(0, 0, false).withThrottle(throttle).withTransport((isa, connect, read) -> {
+            throw new UnknownHostException(isa.getHostString());
+        });
+        assertNull(unknown.connect(TARGET, 0x0303, Collections.singletonList(0x002F)));
+        assertEquals(0, throttle.congestions());
+        assertEquals(0, throttle.retries());
+
+        Prober refused = new Prober(0, 0, false).withThrottle(throttle).withTransport((isa, connect, read) -> {
+            throw new ConnectException("Connection refused");
+        });
+        assertNull(refused.connect(TARGET, 0x0303, Collections.singletonList(0x002F)));
+        assertEquals(0, throttle.congestions());
+        assertEquals(0, throttle.retries());
+
+        Prober reset = new Prober(0, 0, false).withThrottle(throttle).withTransport((isa, connect, read) -> {
+            throw new SocketException("Connection reset");
+        });
+        assertNull(reset.connect(TARGET, 0x0303, Collections.singletonList(0x002F)));
+        // each retry starts after the last decrease, so it counts again
+        assertEquals(TargetThrottle.RETRIES + 1, throttle.congestions());
+        assertEquals(TargetThrottle.RETRIES, throttle.retries());
+    }
+
+    public void testResetHelloIsRefusal() throws Exception {
+        TargetThrottle throttle = new TargetThrottle(4, true, 0);
+        FakeTlsServer server = new FakeTlsServer(0x0303, 0x0303, Collections.singletonList(0x002F), null);
+        AtomicInteger answers = new AtomicInteger();
+        MemoryTransport transport = new MemoryTransport().serve(TARGET, request -> {
+            if (answers.getAndIncrement() == 0) {
+                return server.respond(request);
+            }
+            throw new SocketException("Connection reset");
+        });
+        Prober prober = new Prober(0, 0, true).withThrottle(throttle).withTransport(transport);
+        assertEquals(0x002F, prober.connect(TARGET, 0x0303, Collections.singletonList(0x002F)).cipherSuite);
+
+        // refused: neither retried nor a congestion signal
+        long refusals = ScanMetrics.INSTANCE.refusals.get();
+        assertNull(prober.connect(TARGET, 0x0303, Collections.singletonList(0x0035)));
+        assertEquals(refusals + 1, ScanMetrics.INSTANCE.refusals.get());
+        assertEquals(0, throttle.congestions());
+        assertEquals(0, throttle.retries());
+        assertEquals(2, transport.connections.get());
+
+        // the server chose 0x002F before: it is throttling
+        assertNull(prober.connect(TARGET, 0x0303, Arrays.asList(0x0035, 0x002F)));
+        assertEquals(TargetThrottle.RETRIES + 1, throttle.congestions());
+        assertEquals(TargetThrottle.RETRIES, throttle.retries());
+    }
+}